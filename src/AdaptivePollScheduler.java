@@ -0,0 +1,167 @@
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a poll task on a variable interval instead of a fixed rate.
+ *
+ * - Right after activity (a detected change or a user keypress) it polls at the
+ *   fastest interval
+ * - Every poll that finds nothing doubles the interval, up to the slowest
+ *   interval (the idle floor)
+ *
+ * All scheduling happens on the supplied executor's thread, so the poll task
+ * never runs concurrently with itself.
+ *
+ * Wakeups are reported against the fixed-rate poll being replaced. Only an idle
+ * floor slower than that rate, or time spent stopped (e.g. while push
+ * notifications take over), saves any.
+ */
+public class AdaptivePollScheduler {
+    private final ScheduledExecutorService executor;
+    private final BooleanSupplier pollTask; // Returns true if something changed
+    private volatile long fastestIntervalMs;
+    private volatile long slowestIntervalMs;
+    private volatile long currentIntervalMs;
+    private final long baselineIntervalMs; // The fixed rate being replaced, for the stats
+    private volatile boolean running = false;
+    private ScheduledFuture<?> nextPoll; // Only touched on the executor thread
+    private long nextPollAt;
+    
+    // Statistics
+    private final AtomicLong wakeups = new AtomicLong();
+    private final AtomicLong activityBoosts = new AtomicLong();
+    private final long createdAt = System.currentTimeMillis();
+    
+    /**
+     * @param baselineIntervalMs interval of the fixed-rate poll this replaces,
+     *                           which wakeups are compared against
+     */
+    public AdaptivePollScheduler(ScheduledExecutorService executor, BooleanSupplier pollTask,
+                                 long fastestIntervalMs, long slowestIntervalMs, long baselineIntervalMs) {
+        this.executor = executor;
+        this.pollTask = pollTask;
+        this.baselineIntervalMs = baselineIntervalMs;
+        setIntervals(fastestIntervalMs, slowestIntervalMs);
+        this.currentIntervalMs = fastestIntervalMs;
+    }
+    
+    /**
+     * Configures the fastest (post-activity) and slowest (idle floor) intervals
+     */
+    public void setIntervals(long fastestIntervalMs, long slowestIntervalMs) {
+        if (fastestIntervalMs <= 0 || slowestIntervalMs < fastestIntervalMs) {
+            throw new IllegalArgumentException(
+                "Invalid poll intervals: " + fastestIntervalMs + "ms - " + slowestIntervalMs + "ms");
+        }
+        this.fastestIntervalMs = fastestIntervalMs;
+        this.slowestIntervalMs = slowestIntervalMs;
+        this.currentIntervalMs = Math.max(fastestIntervalMs, Math.min(currentIntervalMs, slowestIntervalMs));
+    }
+    
+    /**
+     * Starts polling at the fastest interval. Must be called on the executor thread.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        currentIntervalMs = fastestIntervalMs;
+        scheduleNext(currentIntervalMs);
+    }
+    
+    /**
+     * Stops polling. Must be called on the executor thread.
+     */
+    public void stop() {
+        running = false;
+        if (nextPoll != null) {
+            nextPoll.cancel(false);
+            nextPoll = null;
+        }
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Signals user activity (copy, Cmd keypress...). Safe to call from any thread.
+     * Drops back to the fastest interval and pulls the next poll forward if needed.
+     */
+    public void noteActivity() {
+        activityBoosts.incrementAndGet();
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.execute(() -> {
+            currentIntervalMs = fastestIntervalMs;
+            if (running && nextPollAt - System.currentTimeMillis() > fastestIntervalMs) {
+                nextPoll.cancel(false);
+                scheduleNext(fastestIntervalMs);
+            }
+        });
+    }
+    
+    private void scheduleNext(long delayMs) {
+        nextPollAt = System.currentTimeMillis() + delayMs;
+        nextPoll = executor.schedule(this::poll, delayMs, TimeUnit.MILLISECONDS);
+    }
+    
+    private void poll() {
+        if (!running) {
+            return;
+        }
+        wakeups.incrementAndGet();
+        
+        boolean changed = pollTask.getAsBoolean();
+        if (changed) {
+            currentIntervalMs = fastestIntervalMs;
+        } else {
+            // Exponential backoff while idle
+            currentIntervalMs = Math.min(currentIntervalMs * 2, slowestIntervalMs);
+        }
+        
+        // The poll task may have stopped us (e.g. push notifications took over)
+        if (running) {
+            scheduleNext(currentIntervalMs);
+        }
+    }
+    
+    public long getCurrentIntervalMillis() {
+        return currentIntervalMs;
+    }
+    
+    public long getWakeupCount() {
+        return wakeups.get();
+    }
+    
+    public long getActivityCount() {
+        return activityBoosts.get();
+    }
+    
+    /**
+     * Wakeups the replaced fixed-rate poll would have needed over the same
+     * period, for comparison with getWakeupCount()
+     */
+    public long getBaselineWakeups() {
+        return (System.currentTimeMillis() - createdAt) / baselineIntervalMs;
+    }
+    
+    /**
+     * Wakeups beyond the baseline; negative when polling saved some
+     */
+    public long getExtraWakeups() {
+        return getWakeupCount() - getBaselineWakeups();
+    }
+    
+    public String getStatsSummary() {
+        long extra = getExtraWakeups();
+        return String.format("poll interval %dms, %d wakeups vs %d at a fixed %dms (%d %s), %d activity boosts",
+            getCurrentIntervalMillis(), getWakeupCount(), getBaselineWakeups(), baselineIntervalMs,
+            Math.abs(extra), extra > 0 ? "extra" : "saved", getActivityCount());
+    }
+}
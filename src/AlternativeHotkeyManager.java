@@ -4,14 +4,17 @@ import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
 import com.github.kwhat.jnativehook.keyboard.NativeKeyListener;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.function.Supplier;
 
 public class AlternativeHotkeyManager implements NativeKeyListener {
-    private ClipboardHistoryGUI gui;
+    private final ClipboardMonitor monitor;
+    private final Supplier<ClipboardHistoryGUI> gui; // Built on first use
     private boolean cmdPressed = false;
     private boolean shiftPressed = false;
     private long lastHotkeyTime = 0;
     
-    public AlternativeHotkeyManager(ClipboardHistoryGUI gui) {
+    public AlternativeHotkeyManager(ClipboardMonitor monitor, Supplier<ClipboardHistoryGUI> gui) {
+        this.monitor = monitor;
         this.gui = gui;
     }
     
@@ -67,6 +70,9 @@ public class AlternativeHotkeyManager implements NativeKeyListener {
         // Track modifier keys
         if (e.getKeyCode() == NativeKeyEvent.VC_META) {  // Cmd key on Mac
             cmdPressed = true;
+            
+            // A copy is likely coming - let the monitor poll faster for a while
+            monitor.noteUserActivity();
         }
         if (e.getKeyCode() == NativeKeyEvent.VC_SHIFT) {
             shiftPressed = true;
@@ -74,6 +80,7 @@ public class AlternativeHotkeyManager implements NativeKeyListener {
         
         // Check for Cmd+Shift+C combination (C for Clipboard history)
         if (cmdPressed && shiftPressed && e.getKeyCode() == NativeKeyEvent.VC_C) {
+            long pressedAt = System.nanoTime(); // For hotkey-to-paint latency
             long currentTime = System.currentTimeMillis();
             
             // Prevent multiple rapid triggers (debounce)
@@ -85,7 +92,7 @@ public class AlternativeHotkeyManager implements NativeKeyListener {
                 // Show the GUI - this key combination has no conflicts!
                 javax.swing.SwingUtilities.invokeLater(new Runnable() {
                     public void run() {
-                        gui.showHistory();
+                        gui.get().showHistory(pressedAt);
                     }
                 });
             }
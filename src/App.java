@@ -2,22 +2,74 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.prefs.Preferences;
 
 public class App {
     private ClipboardMonitor monitor;
-    private ClipboardHistoryGUI gui;
+    private ClipboardHistoryGUI gui; // Built on first use (EDT only), see getGui()
     private SystemTray systemTray;
     private TrayIcon trayIcon;
     private GlobalHotkeyManager hotkeyManager;
     private AlternativeHotkeyManager altHotkeyManager;
     private boolean usingAlternativeHotkey = false;
+    private final Preferences preferences = Preferences.userNodeForPackage(App.class);
+    private static final String PREF_PERSIST_HISTORY = "persistHistory";
+    private static final String PREF_FUZZY_SEARCH = "fuzzySearch";
+    private static final int GUI_PREBUILD_DELAY_MS = 2000;
+    private final long launchedAt;
     
-    public App() {
-        setupSystemLookAndFeel();
-        initializeComponents();
-        setupSystemTray();
-        setupGlobalHotkey();
-        startApplication();
+    public App(long launchedAt) {
+        this.launchedAt = launchedAt;
+    }
+    
+    /**
+     * Runs startup as timed phases. Native hook registration and monitor start
+     * run concurrently off the EDT while the EDT sets up the look and feel and
+     * the tray. The history window is built when first needed, or once startup
+     * has been idle for a moment.
+     */
+    public void start() {
+        timePhase("monitor setup", this::initializeComponents);
+        
+        ExecutorService startup = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "app-startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<Void> ui = CompletableFuture.runAsync(() -> {
+            timePhase("look and feel", this::setupSystemLookAndFeel);
+            timePhase("system tray", this::setupSystemTray);
+        }, SwingUtilities::invokeLater);
+        CompletableFuture<Void> hotkey = CompletableFuture.runAsync(
+            () -> timePhase("hotkey registration", this::setupGlobalHotkey), startup);
+        CompletableFuture<Void> monitoring = CompletableFuture.runAsync(
+            () -> timePhase("monitor start", this::startMonitoring), startup);
+        
+        CompletableFuture.allOf(ui, hotkey, monitoring).whenComplete((ignored, error) -> {
+            startup.shutdown();
+            if (error != null) {
+                showStartupError(error.getCause() != null ? error.getCause() : error);
+                return;
+            }
+            logMilestone("startup complete");
+            SwingUtilities.invokeLater(this::startApplication);
+        });
+    }
+    
+    private void timePhase(String name, Runnable phase) {
+        long start = System.nanoTime();
+        phase.run();
+        System.out.printf("Startup: %s took %.1fms on %s%n",
+            name, (System.nanoTime() - start) / 1e6, Thread.currentThread().getName());
+    }
+    
+    private void logMilestone(String milestone) {
+        System.out.printf("Startup: %s %.1fms after launch%n", milestone, (System.nanoTime() - launchedAt) / 1e6);
     }
     
     private void setupSystemLookAndFeel() {
@@ -38,10 +90,41 @@ public class App {
     
     private void initializeComponents() {
         monitor = new ClipboardMonitor();
-        gui = new ClipboardHistoryGUI(monitor);
         
-        // Set default positioning mode (you can change this)
-        gui.setPositionMode(ClipboardHistoryGUI.PositionMode.MOUSE_RELATIVE);
+        // Keep big copies (logs, exports...) off the heap
+        monitor.setOffHeapStorage(true, 64 * 1024);
+        
+        // Let edited versions of the same medium-sized block share memory
+        monitor.setChunkedStorage(true, 4 * 1024);
+        
+        // Compress entries past the first screenful or not copied for 5 minutes
+        monitor.setCompression(true, 10, 5 * 60 * 1000);
+        
+        // Keep four weeks of evicted entries compressed off-heap, still searchable
+        monitor.setColdTier(true, 50_000, 28L * 24 * 60 * 60 * 1000);
+        
+    }
+    
+    /**
+     * Builds the history window the first time it's needed (EDT only)
+     */
+    private ClipboardHistoryGUI getGui() {
+        if (gui == null) {
+            long start = System.nanoTime();
+            gui = new ClipboardHistoryGUI(monitor);
+            
+            // Set default positioning mode (you can change this)
+            gui.setPositionMode(ClipboardHistoryGUI.PositionMode.MOUSE_RELATIVE);
+            gui.setFuzzySearch(preferences.getBoolean(PREF_FUZZY_SEARCH, false));
+            if (trayIcon != null) {
+                gui.setTrayIcon(trayIcon);
+            }
+            System.out.printf("History window built in %.1fms%n", (System.nanoTime() - start) / 1e6);
+            
+            // Keep it realized and current while hidden, so the hotkey only has to show it
+            gui.setWarmWindow(true);
+        }
+        return gui;
     }
     
     private void setupSystemTray() {
@@ -76,7 +159,7 @@ public class App {
         MenuItem mousePositionItem = new MenuItem("Near Mouse Cursor");
         mousePositionItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                gui.setPositionMode(ClipboardHistoryGUI.PositionMode.MOUSE_RELATIVE);
+                getGui().setPositionMode(ClipboardHistoryGUI.PositionMode.MOUSE_RELATIVE);
                 showStatusMessage("Window will appear near mouse cursor");
             }
         });
@@ -85,7 +168,7 @@ public class App {
         MenuItem menuBarPositionItem = new MenuItem("Near Menu Bar");
         menuBarPositionItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                gui.setPositionMode(ClipboardHistoryGUI.PositionMode.MENU_BAR);
+                getGui().setPositionMode(ClipboardHistoryGUI.PositionMode.MENU_BAR);
                 showStatusMessage("Window will appear near menu bar");
             }
         });
@@ -94,7 +177,7 @@ public class App {
         MenuItem centerPositionItem = new MenuItem("Screen Center");
         centerPositionItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                gui.setPositionMode(ClipboardHistoryGUI.PositionMode.CENTER);
+                getGui().setPositionMode(ClipboardHistoryGUI.PositionMode.CENTER);
                 showStatusMessage("Window will appear in screen center");
             }
         });
@@ -108,7 +191,7 @@ public class App {
         MenuItem forceVisibilityItem = new MenuItem("Force Maximum Visibility");
         forceVisibilityItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                gui.forceMaximumVisibility();
+                getGui().forceMaximumVisibility();
                 showStatusMessage("Applied maximum visibility settings");
             }
         });
@@ -139,6 +222,27 @@ public class App {
         
         popup.addSeparator();
         
+        CheckboxMenuItem persistHistoryItem = new CheckboxMenuItem("Save History to Disk",
+            preferences.getBoolean(PREF_PERSIST_HISTORY, false));
+        persistHistoryItem.addItemListener(new ItemListener() {
+            public void itemStateChanged(ItemEvent e) {
+                setHistoryPersistence(persistHistoryItem);
+            }
+        });
+        popup.add(persistHistoryItem);
+        
+        CheckboxMenuItem fuzzySearchItem = new CheckboxMenuItem("Fuzzy Search",
+            preferences.getBoolean(PREF_FUZZY_SEARCH, false));
+        fuzzySearchItem.addItemListener(new ItemListener() {
+            public void itemStateChanged(ItemEvent e) {
+                preferences.putBoolean(PREF_FUZZY_SEARCH, fuzzySearchItem.getState());
+                if (gui != null) {
+                    gui.setFuzzySearch(fuzzySearchItem.getState());
+                }
+            }
+        });
+        popup.add(fuzzySearchItem);
+        
         MenuItem clearHistoryItem = new MenuItem("Clear History");
         clearHistoryItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
@@ -178,7 +282,9 @@ public class App {
             systemTray.add(trayIcon);
             
             // Pass tray icon reference to GUI for positioning
-            gui.setTrayIcon(trayIcon);
+            if (gui != null) {
+                gui.setTrayIcon(trayIcon);
+            }
             
         } catch (AWTException e) {
             System.err.println("Failed to add tray icon: " + e.getMessage());
@@ -217,8 +323,27 @@ public class App {
     private void setupGlobalHotkey() {
         // Initialize global hotkey manager
         // Option 1: Try Cmd+Shift+V with paste prevention
-        hotkeyManager = new GlobalHotkeyManager(gui);
-        hotkeyManager.initialize();
+        hotkeyManager = new GlobalHotkeyManager(monitor, this::getGui);
+        if (hotkeyManager.initialize()) {
+            logMilestone("hotkey ready");
+        }
+    }
+    
+    private void startMonitoring() {
+        // Opt-in: restore and keep saving history on disk
+        if (preferences.getBoolean(PREF_PERSIST_HISTORY, false)) {
+            monitor.setPersistence(getHistoryLogPath(), null);
+        }
+        monitor.startMonitoring(() -> logMilestone("first capture"));
+    }
+    
+    private void startApplication() {
+        showWelcomeMessage();
+        
+        // Build the history window while nothing else is going on
+        Timer prebuild = new Timer(GUI_PREBUILD_DELAY_MS, e -> getGui());
+        prebuild.setRepeats(false);
+        prebuild.start();
         
         // Show startup information with troubleshooting using high-level dialog
         SwingUtilities.invokeLater(new Runnable() {
@@ -242,11 +367,6 @@ public class App {
         });
     }
     
-    private void startApplication() {
-        monitor.startMonitoring();
-        showWelcomeMessage();
-    }
-    
     private void showWelcomeMessage() {
         if (trayIcon != null) {
             trayIcon.displayMessage(
@@ -275,7 +395,7 @@ public class App {
             }
             
             // Start standard hotkey
-            hotkeyManager = new GlobalHotkeyManager(gui);
+            hotkeyManager = new GlobalHotkeyManager(monitor, this::getGui);
             hotkeyManager.initialize();
             
             usingAlternativeHotkey = false;
@@ -293,7 +413,7 @@ public class App {
             }
             
             // Start alternative hotkey
-            altHotkeyManager = new AlternativeHotkeyManager(gui);
+            altHotkeyManager = new AlternativeHotkeyManager(monitor, this::getGui);
             altHotkeyManager.initialize();
             
             usingAlternativeHotkey = true;
@@ -303,10 +423,34 @@ public class App {
         }
     }
     
+    private void setHistoryPersistence(CheckboxMenuItem item) {
+        boolean enabled = item.getState();
+        // Restoring or deleting the log can take a while, so don't wait for it here
+        monitor.setPersistence(enabled ? getHistoryLogPath() : null, ok -> {
+            if (!ok) {
+                item.setState(!enabled);
+                showStatusMessage("Could not change where clipboard history is saved");
+                return;
+            }
+            preferences.putBoolean(PREF_PERSIST_HISTORY, enabled);
+            showStatusMessage(enabled
+                ? "Clipboard history will be saved to disk"
+                : "Clipboard history is memory-only (saved history deleted)");
+        });
+    }
+    
+    private static Path getHistoryLogPath() {
+        String home = System.getProperty("user.home");
+        if (System.getProperty("os.name").toLowerCase().contains("mac")) {
+            return Paths.get(home, "Library", "Application Support", "Clipboard Manager", "history.log");
+        }
+        return Paths.get(home, ".clipboard-manager", "history.log");
+    }
+    
     private void showHistory() {
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                gui.showHistory();
+                getGui().showHistory();
             }
         });
     }
@@ -323,24 +467,22 @@ public class App {
     
     if (result == JOptionPane.YES_OPTION) {
         // Use the monitor's clearHistory method instead of getHistory().clear()
-        monitor.clearHistory();
-        
-        // Refresh the GUI if it's currently visible
-        if (gui != null) {
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
+        monitor.clearHistory(new Runnable() {
+            public void run() {
+                // Refresh the GUI if it's currently visible
+                if (gui != null) {
                     gui.refreshHistoryDisplay();
                 }
-            });
-        }
-        
-        if (trayIcon != null) {
-            trayIcon.displayMessage(
-                "History Cleared",
-                "All clipboard history has been cleared.",
-                TrayIcon.MessageType.INFO
-            );
-        }
+                
+                if (trayIcon != null) {
+                    trayIcon.displayMessage(
+                        "History Cleared",
+                        "All clipboard history has been cleared.",
+                        TrayIcon.MessageType.INFO
+                    );
+                }
+            }
+        });
     }
 }
     
@@ -390,6 +532,11 @@ public class App {
             if (monitor != null) {
                 monitor.shutdown();
             }
+            if (gui != null) {
+                System.out.println("History window latency: " + gui.getShowLatencySummary());
+                System.out.println("Search: " + gui.getSearchStatsSummary());
+                System.out.println("History list rendering: " + gui.getRenderStatsSummary());
+            }
             if (hotkeyManager != null) {
                 hotkeyManager.shutdown();
             }
@@ -402,23 +549,29 @@ public class App {
             System.exit(0);
         }
     }
-    public static void main(String[] args) {
-        // Ensure we're running on the Event Dispatch Thread
+    
+    private static void showStartupError(Throwable error) {
+        error.printStackTrace();
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                try {
-                    new App();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    JOptionPane.showMessageDialog(
-                        null,
-                        "Failed to start Clipboard Manager: " + e.getMessage(),
-                        "Startup Error",
-                        JOptionPane.ERROR_MESSAGE
-                    );
-                    System.exit(1);
-                }
+                JOptionPane.showMessageDialog(
+                    null,
+                    "Failed to start Clipboard Manager: " + error.getMessage(),
+                    "Startup Error",
+                    JOptionPane.ERROR_MESSAGE
+                );
+                System.exit(1);
             }
         });
     }
+    
+    public static void main(String[] args) {
+        long launchedAt = System.nanoTime();
+        try {
+            // Phases that touch Swing are handed to the Event Dispatch Thread
+            new App(launchedAt).start();
+        } catch (Exception e) {
+            showStartupError(e);
+        }
+    }
 }
\ No newline at end of file
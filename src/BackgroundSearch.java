@@ -0,0 +1,119 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs HistorySearch queries off the EDT.
+ *
+ * Every submit supersedes the previous query: a queued one is skipped, a
+ * running one stops at its next cancellation check, and results that lose
+ * the race are dropped on the EDT. Only the latest query's results reach the
+ * callback, as one list.
+ */
+public class BackgroundSearch {
+    
+    /**
+     * Receives the results of the latest query on the EDT
+     */
+    public interface Callback {
+        void searchCompleted(String query, int types, HistorySnapshot snapshot, HistorySearch.Results results);
+    }
+    
+    private static final int LATENCY_SAMPLES = 512;
+    
+    private final HistorySearch search; // Search thread only
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "history-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong generation = new AtomicLong();
+    
+    // Statistics
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final long[] latencies = new long[LATENCY_SAMPLES]; // Ring buffer, submit to results (EDT)
+    private int latencyCount = 0;
+    
+    /**
+     * @param index trigram index for substring queries, or null to always scan
+     * @param typeIndex content type bitsets for type filters, or null to ignore them
+     * @param unenriched told about entries searched before they were enriched, or null
+     */
+    public BackgroundSearch(TrigramIndex index, ContentTypeIndex typeIndex,
+                            Consumer<ClipboardMonitor.ClipboardEntry> unenriched) {
+        this.search = new HistorySearch(index, typeIndex, unenriched);
+    }
+    
+    /**
+     * Searches a snapshot for a normalized query limited to ContentType bits
+     * (0 for any type), cancelling any earlier query
+     */
+    public void submit(HistorySnapshot snapshot, String query, int types, boolean fuzzy, Callback callback) {
+        long submittedAt = System.nanoTime();
+        long id = generation.incrementAndGet();
+        BooleanSupplier superseded = () -> generation.get() != id;
+        
+        executor.execute(() -> {
+            HistorySearch.Results results =
+                superseded.getAsBoolean() ? null : search.search(snapshot, query, types, fuzzy, superseded);
+            if (results == null) {
+                cancelled.incrementAndGet();
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (superseded.getAsBoolean()) {
+                    cancelled.incrementAndGet();
+                    return;
+                }
+                recordLatency(System.nanoTime() - submittedAt);
+                completed.incrementAndGet();
+                callback.searchCompleted(query, types, snapshot, results);
+            });
+        });
+    }
+    
+    /**
+     * Drops whatever query is queued or running
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+    
+    private synchronized void recordLatency(long nanos) {
+        latencies[latencyCount % LATENCY_SAMPLES] = nanos;
+        latencyCount++;
+    }
+    
+    /**
+     * Latency percentile (0-100) over recent searches, in milliseconds
+     */
+    public synchronized double getLatencyPercentile(double percentile) {
+        int samples = Math.min(latencyCount, LATENCY_SAMPLES);
+        if (samples == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * samples);
+        return sorted[Math.max(0, Math.min(samples, rank) - 1)] / 1e6;
+    }
+    
+    public long getCompletedCount() {
+        return completed.get();
+    }
+    
+    public long getCancelledCount() {
+        return cancelled.get();
+    }
+    
+    public String getStatsSummary() {
+        return String.format("%d completed, %d cancelled, latency p50 %.2fms p90 %.2fms p99 %.2fms (%s)",
+            completed.get(), cancelled.get(), getLatencyPercentile(50), getLatencyPercentile(90),
+            getLatencyPercentile(99), search.getStatsSummary());
+    }
+}
@@ -0,0 +1,316 @@
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything a clipboard copy offered besides plain text: HTML, RTF, images, file lists.
+ *
+ * Capture only records a cheap descriptor (flavor set, kinds, file count, text
+ * length). The heavy data is pulled out of the original Transferable later by
+ * materialize() - on a background thread, or on demand when the entry is
+ * previewed or pasted. Pasting re-offers every kept flavor through
+ * toTransferable(), not just a StringSelection.
+ */
+public class CapturedContents {
+    
+    public enum Kind { TEXT, HTML, RTF, IMAGE, FILES }
+    
+    private final List<DataFlavor> flavors;
+    private final Set<Kind> kinds;
+    private final int fileCount;
+    private final int textLength;
+    private long identityHash; // Distinguishes entries with the same text description
+    
+    // Until materialized we hold the original Transferable; afterwards only its data
+    private Transferable source;
+    private Map<DataFlavor, Object> data;
+    private long materializedBytes = 0;
+    private int imageWidth = -1;
+    private int imageHeight = -1;
+    
+    private CapturedContents(List<DataFlavor> flavors, Set<Kind> kinds, int fileCount,
+                             int textLength, Transferable source) {
+        this.flavors = flavors;
+        this.kinds = kinds;
+        this.fileCount = fileCount;
+        this.textLength = textLength;
+        this.source = source;
+    }
+    
+    /**
+     * Records which flavors the clipboard offers without reading heavy data.
+     * @param text  the plain text already read (or null)
+     * @param files the file list already read (or null)
+     * @return null if the contents offer nothing beyond plain text
+     */
+    public static CapturedContents describe(Transferable contents, String text, List<File> files) {
+        List<DataFlavor> kept = new ArrayList<>();
+        Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+        if (text != null) {
+            kinds.add(Kind.TEXT);
+        }
+        
+        for (DataFlavor flavor : contents.getTransferDataFlavors()) {
+            Kind kind = kindOf(flavor);
+            if (kind == null || kept.contains(flavor)) {
+                continue;
+            }
+            // One representation per rich kind is enough to re-offer it
+            if (kind != Kind.TEXT && kinds.contains(kind) && !isPreferredRepresentation(flavor)) {
+                continue;
+            }
+            kinds.add(kind);
+            kept.add(flavor);
+        }
+        
+        if (!kinds.contains(Kind.HTML) && !kinds.contains(Kind.RTF) &&
+            !kinds.contains(Kind.IMAGE) && !kinds.contains(Kind.FILES)) {
+            return null; // Plain text only - nothing extra to keep
+        }
+        
+        return new CapturedContents(kept, kinds, files == null ? 0 : files.size(),
+                                    text == null ? 0 : text.length(), contents);
+    }
+    
+    /**
+     * True if there's no text or file list to identify the copy by - the pixel
+     * hash (known only after materialize()) has to be used instead
+     */
+    public boolean isImageOnly() {
+        return !kinds.contains(Kind.TEXT) && !kinds.contains(Kind.FILES);
+    }
+    
+    private static Kind kindOf(DataFlavor flavor) {
+        if (flavor.equals(DataFlavor.stringFlavor)) {
+            return Kind.TEXT;
+        }
+        if (flavor.isFlavorJavaFileListType()) {
+            return Kind.FILES;
+        }
+        if (flavor.equals(DataFlavor.imageFlavor)) {
+            return Kind.IMAGE;
+        }
+        String mime = flavor.getPrimaryType() + "/" + flavor.getSubType();
+        Class<?> representation = flavor.getRepresentationClass();
+        boolean portable = representation == String.class || InputStream.class.isAssignableFrom(representation);
+        if (!portable) {
+            return null;
+        }
+        if (mime.equals("text/html")) {
+            return Kind.HTML;
+        }
+        if (mime.equals("text/rtf") || mime.equals("application/rtf")) {
+            return Kind.RTF;
+        }
+        return null;
+    }
+    
+    private static boolean isPreferredRepresentation(DataFlavor flavor) {
+        return flavor.getRepresentationClass() == String.class;
+    }
+    
+    /**
+     * Pulls the data of every kept flavor out of the original Transferable and
+     * drops it. Safe to call from any thread and more than once.
+     */
+    public synchronized void materialize() {
+        if (data != null) {
+            return;
+        }
+        
+        Map<DataFlavor, Object> materialized = new LinkedHashMap<>();
+        long bytes = 0;
+        for (DataFlavor flavor : flavors) {
+            try {
+                Object value = source.getTransferData(flavor);
+                if (value instanceof InputStream) {
+                    value = readFully((InputStream) value);
+                }
+                if (value instanceof Image && !(value instanceof BufferedImage)) {
+                    value = toBufferedImage((Image) value);
+                }
+                if (value instanceof BufferedImage) {
+                    imageWidth = ((BufferedImage) value).getWidth();
+                    imageHeight = ((BufferedImage) value).getHeight();
+                }
+                materialized.put(flavor, value);
+                bytes += estimateBytes(value);
+            } catch (UnsupportedFlavorException | IOException e) {
+                // The owner no longer offers it - re-offer what we did get
+            } catch (Exception e) {
+                System.err.println("Error materializing " + flavor.getMimeType() + ": " + e.getMessage());
+            }
+        }
+        
+        data = materialized;
+        materializedBytes = bytes;
+        source = null;
+        if (isImageOnly()) {
+            identityHash = imageHash();
+        }
+    }
+    
+    public synchronized boolean isMaterialized() {
+        return data != null;
+    }
+    
+    /**
+     * A Transferable re-offering every kept flavor; materializes first if needed
+     */
+    public Transferable toTransferable(String text) {
+        materialize();
+        Map<DataFlavor, Object> snapshot;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<>(data);
+        }
+        if (text != null) {
+            snapshot.putIfAbsent(DataFlavor.stringFlavor, text);
+        }
+        
+        List<DataFlavor> offered = new ArrayList<>(snapshot.keySet());
+        return new Transferable() {
+            @Override
+            public DataFlavor[] getTransferDataFlavors() {
+                return offered.toArray(new DataFlavor[0]);
+            }
+            
+            @Override
+            public boolean isDataFlavorSupported(DataFlavor flavor) {
+                return snapshot.containsKey(flavor);
+            }
+            
+            @Override
+            public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException {
+                Object value = snapshot.get(flavor);
+                if (value == null) {
+                    throw new UnsupportedFlavorException(flavor);
+                }
+                // Streams are single-use, so hand out a fresh one every time
+                return value instanceof byte[] ? new ByteArrayInputStream((byte[]) value) : value;
+            }
+        };
+    }
+    
+    public Set<Kind> getKinds() {
+        return Collections.unmodifiableSet(kinds);
+    }
+    
+    public boolean hasKind(Kind kind) {
+        return kinds.contains(kind);
+    }
+    
+    public List<DataFlavor> getFlavors() {
+        return Collections.unmodifiableList(flavors);
+    }
+    
+    public int getFileCount() {
+        return fileCount;
+    }
+    
+    public int getTextLength() {
+        return textLength;
+    }
+    
+    /**
+     * Hash that tells apart captures with the same text description
+     * (the pixel hash for image-only copies once materialized, 0 otherwise)
+     */
+    public synchronized long getIdentityHash() {
+        return identityHash;
+    }
+    
+    /**
+     * Bytes held by materialized data (0 until materialized)
+     */
+    public synchronized long getAccountedBytes() {
+        return materializedBytes;
+    }
+    
+    /**
+     * Materialized image, or null if there is none (or not materialized yet)
+     */
+    public synchronized BufferedImage getImage() {
+        return data == null ? null : (BufferedImage) data.get(DataFlavor.imageFlavor);
+    }
+    
+    public synchronized int getImageWidth() {
+        return imageWidth;
+    }
+    
+    public synchronized int getImageHeight() {
+        return imageHeight;
+    }
+    
+    /**
+     * Dimensions plus a sparse sample of pixels - enough to tell copies apart
+     */
+    private long imageHash() {
+        BufferedImage image = (BufferedImage) data.get(DataFlavor.imageFlavor);
+        if (image == null) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L ^ ((long) image.getWidth() << 32 | image.getHeight());
+        int stepX = Math.max(1, image.getWidth() / 64);
+        int stepY = Math.max(1, image.getHeight() / 64);
+        for (int y = 0; y < image.getHeight(); y += stepY) {
+            for (int x = 0; x < image.getWidth(); x += stepX) {
+                hash = (hash ^ image.getRGB(x, y)) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+    
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+    
+    private static BufferedImage toBufferedImage(Image image) {
+        int width = Math.max(1, image.getWidth(null));
+        int height = Math.max(1, image.getHeight(null));
+        BufferedImage buffered = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = buffered.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return buffered;
+    }
+    
+    private static long estimateBytes(Object value) {
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof BufferedImage) {
+            BufferedImage image = (BufferedImage) value;
+            return 4L * image.getWidth() * image.getHeight();
+        }
+        if (value instanceof List) {
+            return 64L * ((List<?>) value).size();
+        }
+        return 64;
+    }
+}
@@ -0,0 +1,276 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Content-defined chunking store that lets near-identical entries share memory.
+ *
+ * Content is cut into chunks where a rolling Gear hash hits a boundary pattern,
+ * so boundaries depend on the text around them rather than on absolute offsets.
+ * Editing one line of a large block only changes the chunk(s) around the edit;
+ * every other chunk is found in the store and shared. Chunks are
+ * reference-counted and dropped when the last entry using them is released.
+ *
+ * Each chunk is charged to exactly one live payload, its owner: the one that
+ * introduced it, then - once that one is released - the most recent payload
+ * still using it. So the payloads' heap sizes always add up to the chunks
+ * actually held, and the history's byte budget stays honest.
+ *
+ * intern() and release() run on the monitor's writer thread only; reading a
+ * chunked payload's content is safe from any thread.
+ */
+public class ChunkStore {
+    private static final int MIN_CHUNK_CHARS = 1024;
+    private static final int MAX_CHUNK_CHARS = 16 * 1024;
+    // Top 12 bits: they depend on the last 64 chars, low bits only on the last few
+    private static final long BOUNDARY_MASK = 0xFFFL << 52; // ~4K chars on average
+    private static final long[] GEAR = new long[256];
+    
+    static {
+        // Fixed pseudo-random table (SplitMix64) so boundaries are stable across runs
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < GEAR.length; i++) {
+            long z = (seed += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+    
+    private static class Chunk {
+        final String text;
+        final long fingerprint;
+        int refCount;
+        ChunkedPayload owner; // The payload charged for this chunk
+        Chunk nextInBucket; // Fingerprint collision chain
+        
+        Chunk(String text, long fingerprint) {
+            this.text = text;
+            this.fingerprint = fingerprint;
+        }
+    }
+    
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    private long storedChars = 0;  // Unique chunk chars actually held
+    private long logicalChars = 0; // Chars of all live chunked entries
+    private final List<ChunkedPayload> live = new ArrayList<>(); // Oldest first, to hand chunks on
+    
+    /**
+     * Splits the content into chunks, sharing any already in the store
+     */
+    public EntryPayload intern(String content) {
+        int count = 0;
+        Chunk[] refs = new Chunk[Math.max(1, content.length() / MIN_CHUNK_CHARS + 1)];
+        
+        int start = 0;
+        while (start < content.length()) {
+            int end = nextBoundary(content, start);
+            refs[count++] = acquire(content.substring(start, end));
+            start = end;
+        }
+        
+        Chunk[] trimmed = new Chunk[count];
+        System.arraycopy(refs, 0, trimmed, 0, count);
+        ChunkedPayload payload = new ChunkedPayload(trimmed, content.length());
+        for (Chunk chunk : trimmed) {
+            if (chunk.owner == null) {
+                payload.claim(chunk); // Only new chunks cost memory
+            }
+        }
+        logicalChars += content.length();
+        live.add(payload);
+        return payload;
+    }
+    
+    private int nextBoundary(String content, int start) {
+        int limit = Math.min(content.length(), start + MAX_CHUNK_CHARS);
+        int minEnd = start + MIN_CHUNK_CHARS;
+        if (minEnd >= limit) {
+            return limit;
+        }
+        
+        long hash = 0;
+        for (int i = start; i < limit; i++) {
+            char c = content.charAt(i);
+            hash = (hash << 1) + GEAR[(c ^ (c >>> 8)) & 0xff];
+            if (i >= minEnd && (hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+    
+    private Chunk acquire(String text) {
+        long fingerprint = ClipboardHistory.fingerprint(text);
+        for (Chunk chunk = chunks.get(fingerprint); chunk != null; chunk = chunk.nextInBucket) {
+            if (chunk.text.equals(text)) {
+                chunk.refCount++;
+                return chunk;
+            }
+        }
+        
+        Chunk chunk = new Chunk(text, fingerprint);
+        chunk.refCount = 1;
+        chunk.nextInBucket = chunks.get(fingerprint);
+        chunks.put(fingerprint, chunk);
+        storedChars += text.length();
+        return chunk;
+    }
+    
+    private void releaseChunk(Chunk chunk) {
+        if (--chunk.refCount > 0) {
+            return;
+        }
+        
+        storedChars -= chunk.text.length();
+        Chunk bucket = chunks.get(chunk.fingerprint);
+        if (bucket == chunk) {
+            if (chunk.nextInBucket == null) {
+                chunks.remove(chunk.fingerprint);
+            } else {
+                chunks.put(chunk.fingerprint, chunk.nextInBucket);
+            }
+        } else {
+            while (bucket != null && bucket.nextInBucket != chunk) {
+                bucket = bucket.nextInBucket;
+            }
+            if (bucket != null) {
+                bucket.nextInBucket = chunk.nextInBucket;
+            }
+        }
+    }
+    
+    /**
+     * Charges chunks the released payload owned, and that are still in use,
+     * to the most recent payload using each of them, telling heirs which
+     * payloads' sizes grew
+     */
+    private void handOn(ChunkedPayload released, Consumer<EntryPayload> heirs) {
+        int orphans = 0;
+        for (Chunk chunk : released.chunkRefs) {
+            if (chunk.refCount > 0 && chunk.owner == released) {
+                chunk.owner = null;
+                orphans++;
+            }
+        }
+        for (int i = live.size() - 1; i >= 0 && orphans > 0; i--) {
+            ChunkedPayload heir = live.get(i);
+            boolean inherited = false;
+            for (Chunk chunk : heir.chunkRefs) {
+                if (chunk.owner == null) {
+                    heir.claim(chunk);
+                    orphans--;
+                    inherited = true;
+                }
+            }
+            if (inherited) {
+                heirs.accept(heir);
+            }
+        }
+    }
+    
+    public int getUniqueChunkCount() {
+        int count = 0;
+        for (Chunk chunk : chunks.values()) {
+            for (; chunk != null; chunk = chunk.nextInBucket) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public long getStoredChars() {
+        return storedChars;
+    }
+    
+    public long getLogicalChars() {
+        return logicalChars;
+    }
+    
+    /**
+     * Logical chars / stored chars; above 1 means chunks are being shared
+     */
+    public double getDedupRatio() {
+        return storedChars == 0 ? 1.0 : (double) logicalChars / storedChars;
+    }
+    
+    /**
+     * Content held as a list of shared chunk references
+     */
+    private class ChunkedPayload implements EntryPayload {
+        private final Chunk[] chunkRefs;
+        private final int charLength;
+        private volatile long ownedChars = 0; // Grows when chunks are handed on (writer thread)
+        private boolean released = false;
+        
+        ChunkedPayload(Chunk[] chunkRefs, int charLength) {
+            this.chunkRefs = chunkRefs;
+            this.charLength = charLength;
+        }
+        
+        void claim(Chunk chunk) {
+            chunk.owner = this;
+            ownedChars += chunk.text.length();
+        }
+        
+        @Override
+        public String getContent() {
+            StringBuilder content = new StringBuilder(charLength);
+            for (Chunk chunk : chunkRefs) {
+                content.append(chunk.text);
+            }
+            return content.toString();
+        }
+        
+        @Override
+        public int length() {
+            return charLength;
+        }
+        
+        /**
+         * Reference array plus the chunks this payload owns; chunks it shares
+         * are charged to their owners. Grows when it inherits chunks from a
+         * released payload (see sharesStorage).
+         */
+        @Override
+        public long getHeapBytes() {
+            return 48 + 8L * chunkRefs.length + 2 * ownedChars;
+        }
+        
+        @Override
+        public long getOffHeapBytes() {
+            return 0;
+        }
+        
+        @Override
+        public boolean isCompressible() {
+            return false; // Would break chunk sharing
+        }
+        
+        @Override
+        public boolean sharesStorage() {
+            return true;
+        }
+        
+        @Override
+        public void release() {
+            release(heir -> { });
+        }
+        
+        @Override
+        public void release(Consumer<EntryPayload> heirs) {
+            if (released) {
+                return;
+            }
+            released = true;
+            logicalChars -= charLength;
+            live.remove(this);
+            for (Chunk chunk : chunkRefs) {
+                releaseChunk(chunk);
+            }
+            handOn(this, heirs);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import javax.swing.*;
+import java.awt.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Paints history cells directly: preview line, timestamp line and, for
+ * images, the thumbnail.
+ *
+ * Fonts, colors and metrics are set up once. Each entry's time line (with
+ * line count and size once the entry is enriched) is formatted and its
+ * preview clipped to the cell width the first time the entry is shown, then
+ * reused, so painting a cell allocates nothing and no
+ * HTML is parsed. All cells have the same height (getCellHeight), which the
+ * list uses as its fixed cell height instead of measuring every row.
+ */
+public class ClipboardEntryRenderer extends JComponent implements ListCellRenderer<ClipboardMonitor.ClipboardEntry> {
+    private static final int PADDING_X = 14;
+    private static final int PADDING_Y = 6;
+    private static final int LINE_GAP = 2;
+    private static final int ICON_GAP = 8;
+    private static final String ELLIPSIS = "…";
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter DATE_TIME_FORMAT = // Cold entries can be weeks old
+        DateTimeFormatter.ofPattern("MMM d, HH:mm").withZone(ZoneId.systemDefault());
+    
+    private static final Color SELECTED_BACKGROUND = new Color(0, 122, 255); // macOS blue
+    private static final Color EVEN_BACKGROUND = Color.WHITE;
+    private static final Color ODD_BACKGROUND = new Color(248, 248, 248);
+    private static final Color PREVIEW_COLOR = new Color(0x33, 0x33, 0x33);
+    private static final Color PREVIEW_SELECTED_COLOR = Color.WHITE;
+    private static final Color TIME_COLOR = new Color(0x88, 0x88, 0x88);
+    private static final Color TIME_SELECTED_COLOR = new Color(0xE0, 0xE0, 0xE0);
+    
+    private final ThumbnailCache thumbnails;
+    private final Consumer<ClipboardMonitor.ClipboardEntry> onThumbnailReady;
+    private final Function<ClipboardMonitor.ClipboardEntry, int[]> highlights;
+    private final Consumer<ClipboardMonitor.ClipboardEntry> onUnenriched;
+    
+    private final Font previewFont;
+    private final Font previewSelectedFont;
+    private final Font timeFont;
+    private final FontMetrics previewMetrics;
+    private final FontMetrics previewSelectedMetrics;
+    private final FontMetrics timeMetrics;
+    private final int cellHeight;
+    private final Map<ClipboardMonitor.ClipboardEntry, CellText> texts = new WeakHashMap<>(); // EDT only
+    
+    // The cell being rendered
+    private CellText text;
+    private Icon icon;
+    private int[] highlighted;
+    private boolean selected;
+    private int index;
+    
+    // Statistics
+    private long cellsPainted = 0;
+    private long paintNanos = 0;
+    
+    public ClipboardEntryRenderer(ThumbnailCache thumbnails, Consumer<ClipboardMonitor.ClipboardEntry> onThumbnailReady,
+                                  Function<ClipboardMonitor.ClipboardEntry, int[]> highlights,
+                                  Consumer<ClipboardMonitor.ClipboardEntry> onUnenriched) {
+        this.thumbnails = thumbnails;
+        this.onThumbnailReady = onThumbnailReady;
+        this.highlights = highlights;
+        this.onUnenriched = onUnenriched;
+        
+        Font base = UIManager.getFont("List.font");
+        if (base == null) {
+            base = new Font(Font.DIALOG, Font.PLAIN, 12);
+        }
+        this.previewFont = base.deriveFont(Font.PLAIN, 12f);
+        this.previewSelectedFont = base.deriveFont(Font.BOLD, 12f);
+        this.timeFont = base.deriveFont(Font.PLAIN, 9f);
+        this.previewMetrics = getFontMetrics(previewFont);
+        this.previewSelectedMetrics = getFontMetrics(previewSelectedFont);
+        this.timeMetrics = getFontMetrics(timeFont);
+        
+        int textHeight = previewMetrics.getHeight() + LINE_GAP + timeMetrics.getHeight();
+        this.cellHeight = Math.max(textHeight, ThumbnailCache.THUMBNAIL_SIZE) + 2 * PADDING_Y;
+        setOpaque(true);
+    }
+    
+    /**
+     * Height of every cell, for JList.setFixedCellHeight
+     */
+    public int getCellHeight() {
+        return cellHeight;
+    }
+    
+    @Override
+    public Component getListCellRendererComponent(JList<? extends ClipboardMonitor.ClipboardEntry> list,
+            ClipboardMonitor.ClipboardEntry entry, int index, boolean isSelected, boolean cellHasFocus) {
+        this.index = index;
+        this.selected = isSelected;
+        this.icon = null;
+        this.highlighted = null;
+        if (entry == null) {
+            this.text = null;
+            return this;
+        }
+        
+        CellText cached = texts.get(entry);
+        if (cached == null || cached.metadata != entry.getMetadata()) {
+            // First time shown, or enrichment finished since
+            cached = new CellText(entry);
+            texts.put(entry, cached);
+            if (cached.metadata == null) {
+                onUnenriched.accept(entry); // E.g. restored from the log and only now shown
+            }
+        }
+        this.text = cached;
+        this.highlighted = highlights.apply(entry);
+        
+        // Image entries: thumbnail if ready, placeholder while it's built off the EDT
+        CapturedContents captured = entry.getCaptured();
+        if (captured != null && captured.hasKind(CapturedContents.Kind.IMAGE)) {
+            Icon thumbnail = thumbnails.get(captured);
+            if (thumbnail == null) {
+                thumbnails.request(captured, () -> onThumbnailReady.accept(entry));
+                thumbnail = ThumbnailCache.PLACEHOLDER;
+            }
+            this.icon = thumbnail;
+        }
+        return this;
+    }
+    
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        int width = getWidth();
+        int height = getHeight();
+        g.setColor(selected ? SELECTED_BACKGROUND : index % 2 == 0 ? EVEN_BACKGROUND : ODD_BACKGROUND);
+        g.fillRect(0, 0, width, height);
+        if (text == null) {
+            return;
+        }
+        if (g instanceof Graphics2D) {
+            ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                                              RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        }
+        
+        int x = PADDING_X;
+        if (icon != null) {
+            icon.paintIcon(this, g, x, (height - icon.getIconHeight()) / 2);
+            x += icon.getIconWidth() + ICON_GAP;
+        }
+        
+        FontMetrics metrics = selected ? previewSelectedMetrics : previewMetrics;
+        int textHeight = metrics.getHeight() + LINE_GAP + timeMetrics.getHeight();
+        int previewBaseline = (height - textHeight) / 2 + metrics.getAscent();
+        int timeBaseline = previewBaseline + metrics.getDescent() + LINE_GAP + timeMetrics.getAscent();
+        
+        int visible = text.clip(metrics, selected, width - x - PADDING_X);
+        g.setFont(selected ? previewSelectedFont : previewFont);
+        g.setColor(selected ? PREVIEW_SELECTED_COLOR : PREVIEW_COLOR);
+        g.drawChars(text.preview, 0, visible, x, previewBaseline);
+        if (visible < text.preview.length) {
+            g.drawString(ELLIPSIS, x + metrics.charsWidth(text.preview, 0, visible), previewBaseline);
+        }
+        if (highlighted != null) {
+            // Underline the chars a fuzzy search matched
+            for (int position : highlighted) {
+                if (position < visible) {
+                    int offset = metrics.charsWidth(text.preview, 0, position);
+                    g.fillRect(x + offset, previewBaseline + 1, metrics.charWidth(text.preview[position]), 1);
+                }
+            }
+        }
+        
+        g.setFont(timeFont);
+        g.setColor(selected ? TIME_SELECTED_COLOR : TIME_COLOR);
+        g.drawString(text.time, x, timeBaseline);
+        
+        cellsPainted++;
+        paintNanos += System.nanoTime() - start;
+    }
+    
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(PADDING_X * 2, cellHeight);
+    }
+    
+    // Like DefaultListCellRenderer: a rubber stamp never needs to revalidate or repaint itself
+    @Override
+    public void invalidate() {}
+    
+    @Override
+    public void validate() {}
+    
+    @Override
+    public void revalidate() {}
+    
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {}
+    
+    @Override
+    public void repaint(Rectangle r) {}
+    
+    @Override
+    public void repaint() {}
+    
+    public String getStatsSummary() {
+        return String.format("%d cells painted, avg %.1fus per cell",
+            cellsPainted, cellsPainted == 0 ? 0 : paintNanos / 1e3 / cellsPainted);
+    }
+    
+    /**
+     * An entry's text, prepared once: preview chars, the time line, and how
+     * much of the preview fits the last width it was painted at
+     */
+    private static final class CellText {
+        final char[] preview;
+        final String time;
+        final EntryMetadata metadata; // What the time line was built from (null before enrichment)
+        private int clipWidth = -1;
+        private boolean clipSelected;
+        private int clipChars;
+        
+        CellText(ClipboardMonitor.ClipboardEntry entry) {
+            this.preview = entry.getPreview().toCharArray();
+            this.metadata = entry.getMetadata();
+            DateTimeFormatter format = entry.getPayload().isCold() ? DATE_TIME_FORMAT : TIME_FORMAT;
+            String time = "⏰ " + format.format(Instant.ofEpochMilli(entry.getTimestamp()));
+            if (metadata != null) {
+                if (metadata.getLineCount() > 1) {
+                    time += " · " + metadata.getLineCount() + " lines";
+                }
+                time += " · " + formatSize(metadata.getUtf8Bytes());
+            }
+            this.time = time;
+        }
+        
+        private static String formatSize(long bytes) {
+            if (bytes < 1024) {
+                return bytes + " B";
+            }
+            if (bytes < 1024 * 1024) {
+                return String.format("%.1f KB", bytes / 1024.0);
+            }
+            return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        }
+        
+        /**
+         * How many preview chars fit in width, leaving room for an ellipsis if not all do
+         */
+        int clip(FontMetrics metrics, boolean selected, int width) {
+            if (width == clipWidth && selected == clipSelected) {
+                return clipChars;
+            }
+            int fits = preview.length;
+            if (metrics.charsWidth(preview, 0, fits) > width) {
+                int available = width - metrics.stringWidth(ELLIPSIS);
+                fits = 0;
+                int used = 0;
+                while (fits < preview.length && used + metrics.charWidth(preview[fits]) <= available) {
+                    used += metrics.charWidth(preview[fits]);
+                    fits++;
+                }
+            }
+            clipWidth = width;
+            clipSelected = selected;
+            clipChars = fits;
+            return fits;
+        }
+    }
+}
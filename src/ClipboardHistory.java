@@ -0,0 +1,460 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Most-recent-first clipboard history with O(1) duplicate detection.
+ *
+ * Entries live in a doubly linked list ordered by recency and are indexed by a
+ * 64-bit content fingerprint. A duplicate check hashes the new content once and
+ * only compares full strings when both fingerprint and length match, so
+ * re-copying a multi-megabyte entry doesn't scan every other entry.
+ *
+ * Capacity is bounded both by entry count and by retained bytes (each entry's
+ * accounted size is tracked). When either limit is exceeded, a pluggable
+ * EvictionPolicy picks what to drop. The most recent entry is never evicted.
+ *
+ * Not thread-safe - ClipboardMonitor only touches it from its scheduler thread.
+ */
+public class ClipboardHistory {
+    
+    /**
+     * Receives structural changes in the order they happen
+     */
+    public interface Observer {
+        void entryInserted(ClipboardMonitor.ClipboardEntry entry);
+        void entryMovedToFront(ClipboardMonitor.ClipboardEntry previous, ClipboardMonitor.ClipboardEntry replacement);
+        
+        /**
+         * The entry's payload is only released by the next releaseRetiredPayloads(),
+         * so its content can still be read, here (e.g. to demote it to the
+         * ColdTier) and by readers holding an older snapshot
+         */
+        void entryEvicted(ClipboardMonitor.ClipboardEntry entry);
+    }
+    
+    /**
+     * A position in the history, as seen by eviction policies
+     */
+    public static class Slot {
+        ClipboardMonitor.ClipboardEntry entry;
+        final long fingerprint;
+        final long firstCapturedAt; // Kept when the content is re-copied
+        boolean compressionTried;   // Cold entries are only compressed once
+        long accountedBytes;        // What this slot currently adds to retainedBytes
+        Slot prev;          // Towards the most recent entry
+        Slot next;          // Towards the oldest entry
+        Slot nextInBucket;  // Fingerprint collision chain
+        
+        Slot(ClipboardMonitor.ClipboardEntry entry, long fingerprint) {
+            this.entry = entry;
+            this.fingerprint = fingerprint;
+            this.firstCapturedAt = entry.getTimestamp();
+            entry.setSlot(this);
+        }
+        
+        public ClipboardMonitor.ClipboardEntry getEntry() {
+            return entry;
+        }
+        
+        public long getAccountedBytes() {
+            return accountedBytes;
+        }
+        
+        public long getFirstCapturedAt() {
+            return firstCapturedAt;
+        }
+    }
+    
+    private static final int MIN_COMPRESSIBLE_CHARS = 512;
+    
+    private final Map<Long, Slot> index = new HashMap<>();
+    private Slot head; // Most recent
+    private Slot tail; // Least recent
+    private int size = 0;
+    private long retainedBytes = 0;
+    private int maxEntries;
+    private long maxBytes;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+    private long evictionCount = 0;
+    private Observer observer;
+    private Function<String, EntryPayload> payloadFactory = HeapPayload::new;
+    private final List<EntryPayload> retiredPayloads = new ArrayList<>(); // Evicted or replaced, released next sweep
+    private final Map<EntryPayload, Slot> sharedPayloads = new IdentityHashMap<>(); // Slots whose payload may inherit storage
+    
+    public ClipboardHistory(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * Sets both capacity limits; entries are evicted until both are satisfied
+     */
+    public void setLimits(int maxEntries, long maxBytes) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("History limits must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        evictOverflow();
+    }
+    
+    /**
+     * Decides where new content is stored (heap, off-heap...)
+     */
+    public void setPayloadFactory(Function<String, EntryPayload> payloadFactory) {
+        this.payloadFactory = payloadFactory;
+    }
+    
+    public void setObserver(Observer observer) {
+        this.observer = observer;
+    }
+    
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        evictOverflow();
+    }
+    
+    /**
+     * Adds plain text as the most recent entry
+     */
+    public ClipboardMonitor.ClipboardEntry add(String content, long timestamp) {
+        return add(content, null, timestamp);
+    }
+    
+    /**
+     * Adds content as the most recent entry. An existing entry with the same
+     * content (and, for images, the same pixels) is replaced and moved to the
+     * front instead of being duplicated.
+     * @param captured the copy's other flavors, or null for plain text
+     */
+    public ClipboardMonitor.ClipboardEntry add(String content, CapturedContents captured, long timestamp) {
+        long identity = captured == null ? 0 : captured.getIdentityHash();
+        long contentFingerprint = fingerprint(content);
+        long fingerprint = contentFingerprint ^ identity;
+        ClipboardMonitor.ClipboardEntry entry;
+        
+        Slot existing = find(content, identity, fingerprint);
+        if (existing != null) {
+            // Move to front, keeping the already stored payload; the latest copy's flavors win
+            ClipboardMonitor.ClipboardEntry previous = existing.entry;
+            entry = previous.withCapture(timestamp, captured);
+            existing.entry = entry;
+            unlink(existing);
+            linkFirst(existing);
+            updateAccounting(existing);
+            if (observer != null) {
+                observer.entryMovedToFront(previous, entry);
+            }
+        } else {
+            entry = new ClipboardMonitor.ClipboardEntry(payloadFactory.apply(content),
+                ClipboardMonitor.ClipboardEntry.buildPreview(content), timestamp, captured, contentFingerprint);
+            Slot slot = new Slot(entry, fingerprint);
+            slot.nextInBucket = index.get(fingerprint);
+            index.put(fingerprint, slot);
+            linkFirst(slot);
+            size++;
+            updateAccounting(slot);
+            if (observer != null) {
+                observer.entryInserted(entry);
+            }
+        }
+        evictOverflow();
+        return entry;
+    }
+    
+    /**
+     * Appends an entry restored from persistent storage on the least recent end,
+     * unless the same content is already present.
+     * Doesn't notify the observer or evict anything.
+     * @return false once the history is full and restoring should stop
+     */
+    public boolean restoreOlder(ClipboardMonitor.ClipboardEntry entry) {
+        if (size >= maxEntries || retainedBytes + entry.getAccountedBytes() > maxBytes) {
+            return false;
+        }
+        
+        long fingerprint = entry.getFingerprint() ^ entry.getIdentityHash();
+        for (Slot slot = index.get(fingerprint); slot != null; slot = slot.nextInBucket) {
+            // Same full comparison as find(), so a fingerprint collision can't drop the entry
+            if (slot.entry.getLength() == entry.getLength() &&
+                slot.entry.getIdentityHash() == entry.getIdentityHash() &&
+                slot.entry.getContent().equals(entry.getContent())) {
+                return true; // Already have it (a newer copy from this session)
+            }
+        }
+        
+        Slot slot = new Slot(entry, fingerprint);
+        slot.nextInBucket = index.get(fingerprint);
+        index.put(fingerprint, slot);
+        slot.prev = tail;
+        slot.next = null;
+        if (tail != null) {
+            tail.next = slot;
+        }
+        tail = slot;
+        if (head == null) {
+            head = slot;
+        }
+        size++;
+        updateAccounting(slot);
+        return true;
+    }
+    
+    /**
+     * Re-reads an entry's accounted size after it changed outside the history
+     * (e.g. its other flavors were materialized or it was enriched), evicting
+     * if now over budget. A copy that replaced the entry counts as the entry.
+     * @return true if the entry is still in the history
+     */
+    public boolean reaccount(ClipboardMonitor.ClipboardEntry entry) {
+        // The entry knows its slot, so no lookup by fingerprint (which, for
+        // image-only copies, changes once the pixels are hashed)
+        Slot slot = entry.getSlot();
+        if (slot == null) {
+            return false;
+        }
+        updateAccounting(slot);
+        evictOverflow();
+        return true;
+    }
+    
+    private void updateAccounting(Slot slot) {
+        EntryPayload payload = slot.entry.getPayload();
+        if (payload.sharesStorage()) {
+            sharedPayloads.put(payload, slot);
+        }
+        long current = slot.entry.getAccountedBytes();
+        retainedBytes += current - slot.accountedBytes;
+        slot.accountedBytes = current;
+    }
+    
+    public void clear() {
+        for (Slot slot = head; slot != null; slot = slot.next) {
+            retiredPayloads.add(slot.entry.getPayload()); // Views may still show it until they catch up
+            slot.entry.setSlot(null);
+        }
+        index.clear();
+        sharedPayloads.clear();
+        head = null;
+        tail = null;
+        size = 0;
+        retainedBytes = 0;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+    
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    /**
+     * Returns the entries most-recent-first
+     */
+    public List<ClipboardMonitor.ClipboardEntry> toList() {
+        List<ClipboardMonitor.ClipboardEntry> list = new ArrayList<>(size);
+        for (Slot slot = head; slot != null; slot = slot.next) {
+            list.add(slot.entry);
+        }
+        return list;
+    }
+    
+    private Slot find(String content, long identity, long fingerprint) {
+        for (Slot slot = index.get(fingerprint); slot != null; slot = slot.nextInBucket) {
+            // Full comparison (and materialization) only on a fingerprint + length match
+            if (slot.entry.getLength() == content.length() &&
+                slot.entry.getIdentityHash() == identity &&
+                slot.entry.getContent().equals(content)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+    
+    private void evictOverflow() {
+        while ((size > maxEntries || retainedBytes > maxBytes) && size > 1) {
+            Slot victim = evictionPolicy.selectVictim(evictionCandidates());
+            if (victim == null || victim == head) {
+                victim = tail; // Misbehaving policy - fall back to LRU
+            }
+            remove(victim);
+            evictionCount++;
+            retiredPayloads.add(victim.entry.getPayload());
+            if (observer != null) {
+                observer.entryEvicted(victim.entry);
+            }
+        }
+    }
+    
+    /**
+     * Compresses entries ranked at or past afterRank, or older than afterAgeMs.
+     * Entries smaller than a few hundred chars aren't worth it and are skipped.
+     *
+     * Every copy of an entry sees the compressed payload, but a reader may
+     * still hold the old one, so it's retired until the next sweep.
+     * @return true if anything was compressed
+     */
+    public boolean compressColdEntries(CompressionTier tier, int afterRank, long afterAgeMs, long now) {
+        boolean changed = false;
+        int rank = 0;
+        for (Slot slot = head; slot != null; slot = slot.next, rank++) {
+            if (slot.compressionTried || slot.entry.getLength() < MIN_COMPRESSIBLE_CHARS ||
+                !slot.entry.getPayload().isCompressible()) {
+                continue;
+            }
+            if (rank < afterRank && now - slot.entry.getTimestamp() < afterAgeMs) {
+                continue;
+            }
+            
+            slot.compressionTried = true;
+            EntryPayload current = slot.entry.getPayload();
+            EntryPayload compressed = tier.compress(current);
+            if (compressed != null) {
+                slot.entry.replacePayload(compressed);
+                retiredPayloads.add(current);
+                updateAccounting(slot);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Releases payloads evicted, cleared or replaced since the last call (the
+     * caller runs this as a periodic sweep, so readers get a sweep interval to
+     * finish with them). Shared storage they held may be handed on to
+     * surviving entries, which can push the history back over its byte limit.
+     * @return true if retained bytes changed
+     */
+    public boolean releaseRetiredPayloads() {
+        if (retiredPayloads.isEmpty()) {
+            return false;
+        }
+        List<EntryPayload> released = new ArrayList<>(retiredPayloads);
+        retiredPayloads.clear();
+        
+        // Storage they were charged for may now be charged to surviving entries;
+        // only those entries are re-read (heirs still waiting for release have no slot)
+        long before = retainedBytes;
+        for (EntryPayload payload : released) {
+            payload.release(heir -> {
+                Slot slot = sharedPayloads.get(heir);
+                if (slot != null && slot.entry.getPayload() == heir) {
+                    updateAccounting(slot);
+                }
+            });
+        }
+        if (retainedBytes == before) {
+            return false;
+        }
+        evictOverflow();
+        return true;
+    }
+    
+    public boolean hasRetiredPayloads() {
+        return !retiredPayloads.isEmpty();
+    }
+    
+    /**
+     * Least recent first, excluding the most recent entry
+     */
+    private Iterable<Slot> evictionCandidates() {
+        return () -> new Iterator<Slot>() {
+            private Slot current = tail;
+            
+            @Override
+            public boolean hasNext() {
+                return current != null && current != head;
+            }
+            
+            @Override
+            public Slot next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Slot slot = current;
+                current = current.prev;
+                return slot;
+            }
+        };
+    }
+    
+    private void remove(Slot slot) {
+        unlink(slot);
+        
+        // Drop from the fingerprint bucket
+        Slot bucket = index.get(slot.fingerprint);
+        if (bucket == slot) {
+            if (slot.nextInBucket == null) {
+                index.remove(slot.fingerprint);
+            } else {
+                index.put(slot.fingerprint, slot.nextInBucket);
+            }
+        } else {
+            while (bucket != null && bucket.nextInBucket != slot) {
+                bucket = bucket.nextInBucket;
+            }
+            if (bucket != null) {
+                bucket.nextInBucket = slot.nextInBucket;
+            }
+        }
+        slot.nextInBucket = null;
+        sharedPayloads.remove(slot.entry.getPayload());
+        slot.entry.setSlot(null);
+        size--;
+        retainedBytes -= slot.accountedBytes;
+    }
+    
+    private void linkFirst(Slot slot) {
+        slot.prev = null;
+        slot.next = head;
+        if (head != null) {
+            head.prev = slot;
+        }
+        head = slot;
+        if (tail == null) {
+            tail = slot;
+        }
+    }
+    
+    private void unlink(Slot slot) {
+        if (slot.prev != null) {
+            slot.prev.next = slot.next;
+        } else {
+            head = slot.next;
+        }
+        if (slot.next != null) {
+            slot.next.prev = slot.prev;
+        } else {
+            tail = slot.prev;
+        }
+        slot.prev = null;
+        slot.next = null;
+    }
+    
+    /**
+     * 64-bit FNV-1a hash over the UTF-16 chars of the content
+     */
+    public static long fingerprint(String content) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            hash ^= (c & 0xff);
+            hash *= 0x100000001b3L;
+            hash ^= (c >>> 8);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -1,26 +1,61 @@
 import javax.swing.*; 
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
-import java.awt.datatransfer.StringSelection;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ClipboardHistoryGUI extends JDialog {
     private final ClipboardMonitor monitor;
     private final JList<ClipboardMonitor.ClipboardEntry> historyList;
-    private final DefaultListModel<ClipboardMonitor.ClipboardEntry> listModel;
+    private final HistoryListModel listModel;
     private final JTextField searchField;
     private TrayIcon trayIcon; // Reference to tray icon for positioning
     
+    // Deltas from the writer queue up off the EDT and are drained in one pass
+    private static final int MAX_INCREMENTAL_EVENTS = 32; // Beyond this one reload is cheaper
+    private final ConcurrentLinkedQueue<PendingChange> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private long modelVersion = -1; // History version the list model reflects (EDT only)
+    private String activeFilter = ""; // Normalized search text the model is filtered by (EDT only)
+    private HistorySearch.Results activeResults = null; // Search behind a filtered model (EDT only)
+    private boolean fuzzySearch = false; // Ranked subsequence matching instead of substring (EDT only)
+    private int activeTypes = 0; // ContentType bits the model is filtered by (EDT only)
+    private int selectedTypes = 0; // ContentType bits of the chips switched on (EDT only)
+    private final Map<ContentType, JToggleButton> typeChips = new EnumMap<>(ContentType.class);
+    
+    // Search runs off the EDT, once typing pauses
+    private static final int SEARCH_DEBOUNCE_MS = 60;
+    private static final String SEARCH_PLACEHOLDER = "Search clipboard history...";
+    private final BackgroundSearch search;
+    private final Timer searchDebounce = new Timer(SEARCH_DEBOUNCE_MS, e -> startSearch());
+    
+    private final ThumbnailCache thumbnails = new ThumbnailCache(4L * 1024 * 1024);
+    private final ClipboardEntryRenderer renderer;
+    
+    // Warm window: stays realized and current while hidden, so showing is a reposition + setVisible
+    private static final long FIRST_PAINT_BUDGET_NANOS = 16_000_000L; // One frame at 60Hz
+    private boolean warmWindow = false;
+    private long showRequestedAt = 0; // Hotkey time of a show that hasn't painted yet (EDT only)
+    private long shows = 0;
+    private long slowShows = 0;
+    private long totalShowNanos = 0;
+    private long worstShowNanos = 0;
+    
     // Positioning options
     public enum PositionMode {
         MOUSE_RELATIVE,  // Appear near mouse cursor
@@ -32,11 +67,23 @@ public class ClipboardHistoryGUI extends JDialog {
     
     public ClipboardHistoryGUI(ClipboardMonitor monitor) {
         this.monitor = monitor;
-        this.listModel = new DefaultListModel<>();
-        this.historyList = new JList<>(listModel);
+        this.listModel = new HistoryListModel();
+        this.historyList = new JList<ClipboardMonitor.ClipboardEntry>(listModel) {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                listPainted();
+            }
+        };
         this.searchField = new JTextField();
+        this.search = new BackgroundSearch(monitor.getSearchIndex(), monitor.getContentTypeIndex(),
+                                           monitor::requestEnrichment);
+        this.renderer = new ClipboardEntryRenderer(thumbnails, this::repaintEntry, this::getPreviewHighlights,
+                                                   monitor::requestEnrichment);
         
         setupGUI();
+        // Listen first, so no delta published after the initial load is missed
+        monitor.addHistoryListener(this::enqueueHistoryEvents);
         refreshHistory();
     }
     
@@ -48,6 +95,95 @@ public class ClipboardHistoryGUI extends JDialog {
         this.positionMode = mode;
     }
     
+    /**
+     * In warm mode the hidden window stays realized, laid out and in sync with
+     * the history, and is reset for the next show as soon as it's hidden
+     */
+    public void setWarmWindow(boolean warm) {
+        this.warmWindow = warm;
+        if (warm) {
+            prewarm();
+        }
+    }
+    
+    /**
+     * Creates the native window and lays it out without showing it, then paints
+     * it once off-screen so renderer and font caches are ready for the first show
+     */
+    private void prewarm() {
+        long start = System.nanoTime();
+        if (!isDisplayable()) {
+            addNotify();
+        }
+        validate();
+        resetForNextShow();
+        
+        Container content = getContentPane();
+        if (content.getWidth() > 0 && content.getHeight() > 0) {
+            BufferedImage scratch = new BufferedImage(content.getWidth(), content.getHeight(),
+                                                      BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scratch.createGraphics();
+            content.paint(g);
+            g.dispose();
+        }
+        System.out.printf("History window pre-warmed in %.1fms%n", (System.nanoTime() - start) / 1e6);
+    }
+    
+    /**
+     * Puts the hidden window back into its just-opened state: placeholder in the
+     * search field, unfiltered list, first entry selected
+     */
+    private void resetForNextShow() {
+        searchField.setForeground(Color.GRAY);
+        searchField.setText(SEARCH_PLACEHOLDER);
+        if (isFiltered() || monitor.hasChangedSince(modelVersion)) {
+            refreshHistory();
+        } else if (listModel.getSize() > 0) {
+            historyList.setSelectedIndex(0);
+        }
+        if (listModel.getSize() > 0) {
+            historyList.ensureIndexIsVisible(0);
+        }
+    }
+    
+    /**
+     * First paint after a show: records hotkey-to-paint latency, then does the
+     * focus work that was kept off the critical path
+     */
+    private void listPainted() {
+        if (showRequestedAt == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - showRequestedAt;
+        showRequestedAt = 0;
+        shows++;
+        totalShowNanos += nanos;
+        worstShowNanos = Math.max(worstShowNanos, nanos);
+        boolean slow = nanos > FIRST_PAINT_BUDGET_NANOS;
+        if (slow) {
+            slowShows++;
+        }
+        System.out.printf("History window painted %.1fms after hotkey%s%n",
+            nanos / 1e6, slow ? " (over the 16ms budget)" : "");
+        
+        if (warmWindow) {
+            SwingUtilities.invokeLater(this::afterShow);
+        }
+    }
+    
+    public String getShowLatencySummary() {
+        return String.format("%d shows, avg %.1fms, worst %.1fms, %d over 16ms",
+            shows, shows == 0 ? 0 : totalShowNanos / 1e6 / shows, worstShowNanos / 1e6, slowShows);
+    }
+    
+    public String getRenderStatsSummary() {
+        return renderer.getStatsSummary();
+    }
+    
+    public String getSearchStatsSummary() {
+        return search.getStatsSummary();
+    }
+    
     /**
      * Nuclear option: Force maximum visibility when all else fails
      * Call this if the window is appearing behind other windows
@@ -85,13 +221,13 @@ public class ClipboardHistoryGUI extends JDialog {
         // Search field at top
         JPanel searchPanel = new JPanel(new BorderLayout());
         searchPanel.setBorder(new EmptyBorder(8, 8, 4, 8));
-        searchField.setText("Search clipboard history...");
+        searchField.setText(SEARCH_PLACEHOLDER);
         searchField.setForeground(Color.GRAY);
         
         // Add focus listeners for placeholder effect
         searchField.addFocusListener(new java.awt.event.FocusAdapter() {
             public void focusGained(java.awt.event.FocusEvent evt) {
-                if (searchField.getText().equals("Search clipboard history...")) {
+                if (searchField.getText().equals(SEARCH_PLACEHOLDER)) {
                     searchField.setText("");
                     searchField.setForeground(Color.BLACK);
                 }
@@ -99,18 +235,40 @@ public class ClipboardHistoryGUI extends JDialog {
             public void focusLost(java.awt.event.FocusEvent evt) {
                 if (searchField.getText().isEmpty()) {
                     searchField.setForeground(Color.GRAY);
-                    searchField.setText("Search clipboard history...");
+                    searchField.setText(SEARCH_PLACEHOLDER);
                 }
             }
         });
         
         searchPanel.add(new JLabel("🔍 "), BorderLayout.WEST);
         searchPanel.add(searchField, BorderLayout.CENTER);
+        
+        // Type filter chips under the search field; any chip that's on lets its type through
+        JPanel chipPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        chipPanel.setBorder(new EmptyBorder(4, 0, 0, 0));
+        for (ContentType type : ContentType.values()) {
+            JToggleButton chip = new JToggleButton(type.getLabel());
+            chip.setFont(chip.getFont().deriveFont(10f));
+            chip.setFocusable(false); // Typing stays in the search field
+            chip.setMargin(new Insets(1, 6, 1, 6));
+            chip.putClientProperty("JButton.buttonType", "roundRect");
+            chip.addActionListener(e -> {
+                selectedTypes ^= type.bit();
+                searchDebounce.stop();
+                startSearch();
+            });
+            typeChips.put(type, chip);
+            chipPanel.add(chip);
+        }
+        searchPanel.add(chipPanel, BorderLayout.SOUTH);
         add(searchPanel, BorderLayout.NORTH);
         
         // Configure the list
         historyList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        historyList.setCellRenderer(new ClipboardEntryRenderer());
+        historyList.setCellRenderer(renderer);
+        // Every row is the same size, so the list never asks the renderer to measure one
+        historyList.setFixedCellHeight(renderer.getCellHeight());
+        historyList.setFixedCellWidth(1); // Tracks the viewport width; long previews are clipped
         historyList.setBackground(new Color(248, 248, 248)); // Subtle background
         
         // Add scroll pane for the list
@@ -137,6 +295,16 @@ public class ClipboardHistoryGUI extends JDialog {
             System.setProperty("apple.awt.application.appearance", "system");
         }
         
+        // A hidden warm window gets ready for the next show right away
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                if (warmWindow) {
+                    resetForNextShow();
+                }
+            }
+        });
+        
         // Auto-hide when clicking outside (lose focus)
         addWindowFocusListener(new WindowAdapter() {
             @Override
@@ -194,11 +362,8 @@ public class ClipboardHistoryGUI extends JDialog {
                         historyList.setSelectedIndex(0);
                     }
                 } else if (e.getKeyCode() == KeyEvent.VK_ENTER) {
-                    // Enter in search field pastes first result
-                    if (historyList.getModel().getSize() > 0) {
-                        historyList.setSelectedIndex(0);
-                        pasteSelected();
-                    }
+                    // Enter in search field pastes first result - of what was typed, not of a stale search
+                    pasteFirstResult();
                 }
             }
             
@@ -206,9 +371,24 @@ public class ClipboardHistoryGUI extends JDialog {
             public void keyTyped(KeyEvent e) {}
             
             @Override
-            public void keyReleased(KeyEvent e) {
-                filterHistory();
+            public void keyReleased(KeyEvent e) {}
+        });
+        
+        // Every edit restarts the debounce; only the pause after the last one searches
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchDebounce.restart();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchDebounce.restart();
             }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {}
         });
         
         // Escape key to close dialog
@@ -219,46 +399,246 @@ public class ClipboardHistoryGUI extends JDialog {
         );
     }
     
-    private void filterHistory() {
-        String searchText = searchField.getText().toLowerCase().trim();
-        
-        // Don't filter if showing placeholder text
-        if (searchText.equals("search clipboard history...")) {
-            searchText = "";
+    /**
+     * Normalized search text, empty while the placeholder is showing
+     */
+    private String currentQuery() {
+        String text = searchField.getText();
+        return text.equals(SEARCH_PLACEHOLDER) ? "" : HistorySearch.normalize(text);
+    }
+    
+    /**
+     * Switches between substring and fuzzy (ranked) search, re-running the current query
+     */
+    public void setFuzzySearch(boolean fuzzy) {
+        if (fuzzy == fuzzySearch) {
+            return;
+        }
+        fuzzySearch = fuzzy;
+        if (isFiltered()) {
+            search.submit(monitor.getSnapshot(), activeFilter, selectedTypes, fuzzySearch, this::showSearchResults);
+        }
+    }
+    
+    /**
+     * Whether the list is narrowed by search text or type chips, or is about to be
+     */
+    private boolean isFiltered() {
+        return !activeFilter.isEmpty() || activeTypes != 0 || selectedTypes != 0;
+    }
+    
+    /**
+     * Switches every type chip off (doesn't search)
+     */
+    private void clearTypeChips() {
+        selectedTypes = 0;
+        for (JToggleButton chip : typeChips.values()) {
+            chip.setSelected(false);
+        }
+    }
+    
+    /**
+     * Whether the list already shows the results of this query and type filter
+     */
+    private boolean isShowing(String query, int types) {
+        boolean sameMode = query.isEmpty() || (activeResults != null && activeResults.isRanked() == fuzzySearch);
+        return query.equals(activeFilter) && types == activeTypes && sameMode &&
+               !monitor.hasChangedSince(modelVersion);
+    }
+    
+    /**
+     * Debounce fired or a chip toggled: hands the query to the search thread
+     */
+    private void startSearch() {
+        String query = currentQuery();
+        if (isShowing(query, selectedTypes)) {
+            search.cancel(); // Typed back to what is showing
+            return;
+        }
+        search.submit(monitor.getSnapshot(), query, selectedTypes, fuzzySearch, this::showSearchResults);
+    }
+    
+    /**
+     * Publishes the latest query's results to the list in one batch (EDT)
+     */
+    private void showSearchResults(String query, int types, HistorySnapshot snapshot,
+                                   HistorySearch.Results results) {
+        activeFilter = query;
+        activeTypes = types;
+        activeResults = query.isEmpty() && types == 0 ? null : results;
+        listModel.show(results.getEntries());
+        modelVersion = snapshot.getVersion();
+        if (listModel.getSize() > 0) {
+            historyList.setSelectedIndex(0);
+        } else {
+            historyList.clearSelection();
         }
         
-        listModel.clear();
+        // Deltas drained while the search ran may be newer than its snapshot
+        if (monitor.hasChangedSince(modelVersion)) {
+            search.submit(monitor.getSnapshot(), query, types, fuzzySearch, this::showSearchResults);
+        }
+    }
+    
+    /**
+     * Pastes the first result for the search text as typed: straight away if
+     * the list already shows it, otherwise once the search thread has run it
+     */
+    private void pasteFirstResult() {
+        searchDebounce.stop();
+        String query = currentQuery();
+        if (isShowing(query, selectedTypes)) {
+            search.cancel();
+            pasteFirstShown();
+            return;
+        }
+        // Typing again supersedes this search, and the paste with it
+        search.submit(monitor.getSnapshot(), query, selectedTypes, fuzzySearch,
+            (completedQuery, types, snapshot, results) -> {
+                showSearchResults(completedQuery, types, snapshot, results);
+                if (isVisible()) {
+                    pasteFirstShown();
+                }
+            });
+    }
+    
+    private void pasteFirstShown() {
+        if (listModel.getSize() > 0) {
+            historyList.setSelectedIndex(0);
+            pasteSelected();
+        }
+    }
+    
+    /**
+     * Chars of an entry's preview that the fuzzy query matched, or null
+     */
+    private int[] getPreviewHighlights(ClipboardMonitor.ClipboardEntry entry) {
+        HistorySearch.Match match = activeResults == null ? null : activeResults.getMatch(entry);
+        return match == null ? null : match.getPreviewPositions();
+    }
+    
+    /**
+     * Replaces the list model contents with the current snapshot in one event.
+     * With a search active the filtered list is rebuilt on the search thread.
+     */
+    private void reloadModel() {
+        HistorySnapshot snapshot = monitor.getSnapshot();
+        if (isFiltered()) {
+            search.submit(snapshot, activeFilter, selectedTypes, fuzzySearch, this::showSearchResults);
+            return;
+        }
         
-        List<ClipboardMonitor.ClipboardEntry> allEntries = monitor.getHistory();
+        activeResults = null;
+        ClipboardMonitor.ClipboardEntry selected = getSelectedEntry();
+        listModel.show(snapshot.getEntries());
+        modelVersion = snapshot.getVersion();
         
-        for (ClipboardMonitor.ClipboardEntry entry : allEntries) {
-            if (searchText.isEmpty() || 
-                entry.getContent().toLowerCase().contains(searchText)) {
-                listModel.addElement(entry);
+        // One contentsChanged event doesn't shift the selection like inserts did
+        int index = selected == null ? -1 : listModel.indexOf(selected);
+        if (index >= 0) {
+            historyList.setSelectedIndex(index);
+        } else if (listModel.getSize() > 0) {
+            historyList.setSelectedIndex(0);
+        } else {
+            historyList.clearSelection();
+        }
+    }
+    
+    /**
+     * Selected entry, or null. Safe while the selection still points past a
+     * list that just shrank.
+     */
+    private ClipboardMonitor.ClipboardEntry getSelectedEntry() {
+        int index = historyList.getSelectedIndex();
+        return index >= 0 && index < listModel.getSize() ? listModel.getElementAt(index) : null;
+    }
+    
+    /**
+     * Called on the monitor thread; coalesces changes into a single EDT pass
+     */
+    private void enqueueHistoryEvents(List<HistoryEvent> events, HistorySnapshot snapshot) {
+        pendingChanges.add(new PendingChange(events, snapshot));
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::applyPendingChanges);
+        }
+    }
+    
+    /**
+     * Applies queued deltas to the list model, or re-runs the active search
+     * against the newest snapshot (EDT only)
+     */
+    private void applyPendingChanges() {
+        drainScheduled.set(false);
+        
+        List<HistoryEvent> batch = new ArrayList<>();
+        HistorySnapshot latest = null;
+        PendingChange change;
+        while ((change = pendingChanges.poll()) != null) {
+            // Skip deltas already covered by a reload
+            if (change.snapshot.isNewerThan(modelVersion)) {
+                batch.addAll(change.events);
+                latest = change.snapshot;
             }
         }
+        if (latest == null) {
+            return;
+        }
         
-        // Select first item if available
-        if (listModel.getSize() > 0) {
+        if (isFiltered() || batch.size() > MAX_INCREMENTAL_EVENTS) {
+            reloadModel();
+            return;
+        }
+        listModel.apply(batch, latest.getEntries());
+        modelVersion = latest.getVersion();
+        if (getSelectedEntry() == null && listModel.getSize() > 0) {
             historyList.setSelectedIndex(0);
         }
     }
     
+    /**
+     * The deltas of one published snapshot, waiting for the EDT
+     */
+    private static final class PendingChange {
+        final List<HistoryEvent> events;
+        final HistorySnapshot snapshot;
+        
+        PendingChange(List<HistoryEvent> events, HistorySnapshot snapshot) {
+            this.events = events;
+            this.snapshot = snapshot;
+        }
+    }
+    
+    /**
+     * Repaints only the cell showing this entry (e.g. once its thumbnail is ready)
+     */
+    private void repaintEntry(ClipboardMonitor.ClipboardEntry entry) {
+        int index = listModel.indexOf(entry);
+        if (index >= 0) {
+            Rectangle bounds = historyList.getCellBounds(index, index);
+            if (bounds != null) {
+                historyList.repaint(bounds);
+            }
+        }
+    }
+    
     private void pasteSelected() {
         ClipboardMonitor.ClipboardEntry selected = historyList.getSelectedValue();
         if (selected != null) {
-            // Copy selected text to clipboard
-            Toolkit.getDefaultToolkit().getSystemClipboard()
-                    .setContents(new StringSelection(selected.getContent()), null);
-            
-            setVisible(false);
-            
-            // Simple approach: Always paste after a brief delay
-            SwingUtilities.invokeLater(new Runnable() {
+            // Copy selected entry to clipboard with all its original flavors
+            // (through the monitor so it keeps watching); a cold entry is read
+            // back off the EDT, so paste once it's actually on the clipboard
+            monitor.copyToClipboard(selected, new Runnable() {
                 public void run() {
-                    performPaste();
+                    // Simple approach: Always paste after a brief delay
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            performPaste();
+                        }
+                    });
                 }
             });
+            
+            setVisible(false);
         }
     }
     
@@ -283,7 +663,28 @@ public class ClipboardHistoryGUI extends JDialog {
     }
     
     public void showHistory() {
-        refreshHistory();
+        showHistory(System.nanoTime());
+    }
+    
+    /**
+     * @param requestedAt System.nanoTime() when the hotkey was pressed, for latency tracking
+     */
+    public void showHistory(long requestedAt) {
+        showRequestedAt = requestedAt;
+        if (warmWindow && isDisplayable()) {
+            // Already laid out, current and reset when it was hidden; focus and
+            // fullscreen handling wait until the first paint (see listPainted)
+            positionWindow();
+            setVisible(true);
+            return;
+        }
+        
+        // The model is kept current by deltas; only reload if a search narrowed it
+        if (isFiltered() || monitor.hasChangedSince(modelVersion)) {
+            refreshHistory();
+        } else if (listModel.getSize() > 0) {
+            historyList.setSelectedIndex(0);
+        }
         
         // Special handling for fullscreen apps on macOS
         if (System.getProperty("os.name").toLowerCase().contains("mac")) {
@@ -298,30 +699,45 @@ public class ClipboardHistoryGUI extends JDialog {
         
         // Clear search field and show placeholder
         searchField.setForeground(Color.GRAY);
-        searchField.setText("Search clipboard history...");
+        searchField.setText(SEARCH_PLACEHOLDER);
         
         setVisible(true);
         
         // Critical: Request focus to ensure window appears on current Space
-        SwingUtilities.invokeLater(new Runnable() {
-            public void run() {
+        SwingUtilities.invokeLater(this::afterShow);
+    }
+    
+    private void afterShow() {
+        forceToFront();
+        requestFocus();
+        searchField.requestFocus();
+        if (listModel.getSize() > 0) {
+            historyList.setSelectedIndex(0);
+        }
+        
+        // Additional safety: ensure we're still on top after a brief delay
+        javax.swing.Timer safetyTimer = new javax.swing.Timer(100, new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent e) {
                 forceToFront();
-                requestFocus();
-                searchField.requestFocus();
-                if (listModel.getSize() > 0) {
-                    historyList.setSelectedIndex(0);
-                }
-                
-                // Additional safety: ensure we're still on top after a brief delay
-                javax.swing.Timer safetyTimer = new javax.swing.Timer(100, new java.awt.event.ActionListener() {
-                    public void actionPerformed(java.awt.event.ActionEvent e) {
-                        forceToFront();
-                    }
-                });
-                safetyTimer.setRepeats(false);
-                safetyTimer.start();
             }
         });
+        safetyTimer.setRepeats(false);
+        safetyTimer.start();
+        
+        if (warmWindow && System.getProperty("os.name").toLowerCase().contains("mac")) {
+            // The fullscreen check shells out to osascript, so it runs after the window is up
+            Thread check = new Thread(() -> {
+                if (FullscreenHelper.isInFullscreenSpace()) {
+                    SwingUtilities.invokeLater(() -> {
+                        System.out.println("Detected fullscreen Space - using maximum visibility mode");
+                        FullscreenHelper.emergencyMaximumVisibility(this);
+                        FullscreenHelper.bringToCurrentSpace(this);
+                    });
+                }
+            }, "fullscreen-check");
+            check.setDaemon(true);
+            check.start();
+        }
     }
     
     /**
@@ -521,12 +937,13 @@ public class ClipboardHistoryGUI extends JDialog {
     
     // Replace the existing refreshHistory() method in ClipboardHistoryGUI with this enhanced version:
     private void refreshHistory() {
-    listModel.clear();
-    
-    List<ClipboardMonitor.ClipboardEntry> currentHistory = monitor.getHistory();
-    for (ClipboardMonitor.ClipboardEntry entry : currentHistory) {
-        listModel.addElement(entry);
-    }
+    searchDebounce.stop();
+    search.cancel();
+    activeFilter = "";
+    activeTypes = 0;
+    activeResults = null;
+    clearTypeChips();
+    reloadModel();
     
     // Select first item only if there are items
     if (listModel.getSize() > 0) {
@@ -558,7 +975,7 @@ public class ClipboardHistoryGUI extends JDialog {
                 // Clear search field and show placeholder if window is visible
                 if (isVisible()) {
                     searchField.setForeground(Color.GRAY);
-                    searchField.setText("Search clipboard history...");
+                    searchField.setText(SEARCH_PLACEHOLDER);
                     
                     // If no history, ensure no selection
                     if (listModel.getSize() == 0) {
@@ -567,50 +984,5 @@ public class ClipboardHistoryGUI extends JDialog {
                 }
             }
         });
-    }   
-    // Custom renderer for clipboard entries
-    private static class ClipboardEntryRenderer extends DefaultListCellRenderer {
-        @Override
-        public Component getListCellRendererComponent(JList<?> list, Object value,
-                int index, boolean isSelected, boolean cellHasFocus) {
-            
-            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-            
-            if (value instanceof ClipboardMonitor.ClipboardEntry) {
-                ClipboardMonitor.ClipboardEntry entry = (ClipboardMonitor.ClipboardEntry) value;
-                
-                // Format timestamp
-                LocalDateTime dateTime = LocalDateTime.ofInstant(
-                    Instant.ofEpochMilli(entry.getTimestamp()), 
-                    ZoneId.systemDefault()
-                );
-                String timeStr = dateTime.format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-                
-                // Create HTML formatted text with better styling
-                String preview = entry.getPreview().replace("<", "&lt;").replace(">", "&gt;");
-                setText(String.format(
-                    "<html><div style='padding: 4px;'>" +
-                    "<div style='font-size: 12px; color: %s; font-weight: %s;'>%s</div>" +
-                    "<div style='font-size: 9px; color: %s; margin-top: 2px;'>⏰ %s</div>" +
-                    "</div></html>",
-                    isSelected ? "white" : "#333333",
-                    isSelected ? "bold" : "normal",
-                    preview,
-                    isSelected ? "#E0E0E0" : "#888888",
-                    timeStr
-                ));
-                
-                setBorder(new EmptyBorder(6, 10, 6, 10));
-                
-                // Custom selection colors
-                if (isSelected) {
-                    setBackground(new Color(0, 122, 255)); // macOS blue
-                } else {
-                    setBackground(index % 2 == 0 ? Color.WHITE : new Color(248, 248, 248));
-                }
-            }
-            
-            return this;
-        }
     }
-}
\ No newline at end of file
+}
@@ -1,109 +1,1146 @@
 import java.awt.*;
 import java.awt.datatransfer.*;
+import java.io.File;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
 
 public class ClipboardMonitor {
-    private final Clipboard clipboard;
-    private final List<ClipboardEntry> history;
+    // Poll quickly right after activity, back off to the idle floor otherwise. A Cmd
+    // keypress or a flavor-listener wake drops back to the fastest interval, so
+    // keyboard copies are seen within 250ms even when idle; the floor only delays
+    // copies made with the mouse.
+    private static final long FASTEST_POLL_INTERVAL_MS = 250;
+    private static final long IDLE_POLL_INTERVAL_MS = 2000;
+    private static final long LEGACY_POLL_INTERVAL_MS = 500; // The old fixed rate, for the polling stats
+    
+    private final ClipboardSource source;
+    private static final int MAX_HISTORY_ENTRIES = 50;
+    private static final long MAX_HISTORY_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_OFF_HEAP_THRESHOLD_CHARS = 64 * 1024;
+    private static final long OFF_HEAP_ARENA_BYTES = 256L * 1024 * 1024;
+    private static final long SWEEP_INTERVAL_MS = 30_000; // Age-based compression and cold tier expiry
+    
+    // Owned by the scheduler thread (the single writer); readers use the snapshot
+    private final ClipboardHistory history;
+    private final AtomicReference<HistorySnapshot> snapshot = new AtomicReference<>(HistorySnapshot.EMPTY);
     private String lastClipboardContent;
+    
+    // Image-only copies (writer thread only, except the interval hint)
+    private static final long MIN_IMAGE_PROBE_INTERVAL_MS = 1000;
+    private static final long MAX_IMAGE_PROBE_INTERVAL_MS = 30_000;
+    private long lastImageIdentity = 0;
+    private long lastImageProbeAt = 0;
+    private boolean imageProbeInFlight = false;
+    private volatile long imageProbeIntervalMs = MIN_IMAGE_PROBE_INTERVAL_MS;
+    
+    // Pulls heavy flavors (images, HTML...) out of captured Transferables
+    private final ExecutorService materializer;
     private final ScheduledExecutorService scheduler;
+    private volatile Thread writerThread;
+    
+    // Deltas recorded by the writer since the last publish (writer thread only)
+    private final List<HistoryEvent> pendingEvents = new ArrayList<>();
+    private final List<HistoryListener> listeners = new CopyOnWriteArrayList<>();
+    private final AdaptivePollScheduler poller;
+    private volatile OffHeapArena arena; // Created on first use
+    private volatile ChunkStore chunkStore; // Created on first use
+    private volatile HistoryLog historyLog; // Null unless persistence is on
+    private final TrigramIndex searchIndex = new TrigramIndex(); // Updated by the writer
+    private final ContentTypeIndex contentTypes = new ContentTypeIndex(); // Same ids, updated by the writer
+    private final ContentClassifier classifier = new ContentClassifier();
+    
+    // Enrichment: workers derive metadata, the writer accounts and indexes the results in batches
+    private static final int ENRICHMENT_THREADS = Math.min(2, Runtime.getRuntime().availableProcessors());
+    private final EnrichmentPipeline enrichment = new EnrichmentPipeline(ENRICHMENT_THREADS);
+    private final ConcurrentLinkedQueue<ClipboardEntry> enrichedEntries = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean enrichmentDrainScheduled = new AtomicBoolean(false);
+    private int offHeapThresholdChars = Integer.MAX_VALUE; // Writer thread only
+    private int chunkThresholdChars = Integer.MAX_VALUE;
+    private volatile CompressionTier compressionTier; // Null while compression is off
+    private int compressAfterRank;
+    private long compressAfterAgeMs;
+    private ScheduledFuture<?> sweep; // While a tier needs it or payloads wait to be released
+    private volatile ColdTier coldTier; // Null while evicted entries are dropped
+    
+    // Statistics
+    private final AtomicLong hotPastes = new AtomicLong();
+    private final AtomicLong coldPastes = new AtomicLong();
     
     public ClipboardMonitor() {
-        this.clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-        this.history = new ArrayList<>();
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        this(new SystemClipboardSource());
+    }
+    
+    public ClipboardMonitor(ClipboardSource source) {
+        this.source = source;
+        this.history = new ClipboardHistory(MAX_HISTORY_ENTRIES, MAX_HISTORY_BYTES);
+        this.scheduler = Executors.newScheduledThreadPool(1, runnable -> {
+            Thread thread = new Thread(runnable, "clipboard-monitor");
+            thread.setDaemon(true);
+            writerThread = thread;
+            return thread;
+        });
+        this.materializer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "clipboard-materializer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.poller = new AdaptivePollScheduler(scheduler, this::checkClipboard,
+                                                FASTEST_POLL_INTERVAL_MS, IDLE_POLL_INTERVAL_MS,
+                                                LEGACY_POLL_INTERVAL_MS);
         this.lastClipboardContent = "";
+        this.history.setPayloadFactory(this::createPayload);
+        this.enrichment.addStage(classifier);
+        this.history.setObserver(new ClipboardHistory.Observer() {
+            @Override
+            public void entryInserted(ClipboardEntry entry) {
+                recordEvent(HistoryEvent.Type.INSERTED, entry, null);
+            }
+            
+            @Override
+            public void entryMovedToFront(ClipboardEntry previous, ClipboardEntry replacement) {
+                recordEvent(HistoryEvent.Type.MOVED_TO_FRONT, replacement, previous);
+            }
+            
+            @Override
+            public void entryEvicted(ClipboardEntry entry) {
+                ColdTier cold = coldTier;
+                if (cold != null && isPersistable(entry)) {
+                    cold.demote(entry, System.currentTimeMillis());
+                }
+                contentTypes.remove(entry);
+                searchIndex.remove(entry);
+                recordEvent(HistoryEvent.Type.EVICTED, entry, null);
+                scheduleSweep(); // Releases its payload
+            }
+        });
+    }
+    
+    /**
+     * Registers a listener for incremental history changes
+     */
+    public void addHistoryListener(HistoryListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeHistoryListener(HistoryListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Pipeline that derives each entry's metadata; more stages can be added
+     */
+    public EnrichmentPipeline getEnrichmentPipeline() {
+        return enrichment;
+    }
+    
+    /**
+     * Trigram index over the history's search keys, for substring search
+     */
+    public TrigramIndex getSearchIndex() {
+        return searchIndex;
+    }
+    
+    /**
+     * Per-type bitsets over the history, for type filters
+     */
+    public ContentTypeIndex getContentTypeIndex() {
+        return contentTypes;
+    }
+    
+    /**
+     * Classifier chain that tags entries with content types; more classifiers can be added
+     */
+    public ContentClassifier getContentClassifier() {
+        return classifier;
+    }
+    
+    /**
+     * Configures how fast to poll after activity and how slow to poll when idle
+     * (only used when the clipboard source can't push changes). The idle floor
+     * is what saves wakeups over the old 500ms rate, at the cost of noticing
+     * copies made without a keypress later.
+     */
+    public void setPollIntervals(long fastestMs, long idleFloorMs) {
+        poller.setIntervals(fastestMs, idleFloorMs);
+    }
+    
+    /**
+     * Hint that the user is likely about to copy (e.g. Cmd was pressed)
+     */
+    public void noteUserActivity() {
+        poller.noteActivity();
+        imageProbeIntervalMs = MIN_IMAGE_PROBE_INTERVAL_MS;
+    }
+    
+    /**
+     * Bounds the history by entry count and by retained bytes, whichever is hit first
+     */
+    public void setHistoryLimits(int maxEntries, long maxBytes) {
+        runOnWriter(() -> {
+            history.setLimits(maxEntries, maxBytes);
+            publishSnapshot();
+            return null;
+        });
+    }
+    
+    public void setEvictionPolicy(EvictionPolicy policy) {
+        runOnWriter(() -> {
+            history.setEvictionPolicy(policy);
+            publishSnapshot();
+            return null;
+        });
+    }
+    
+    /**
+     * Keeps payloads of at least thresholdChars in an off-heap arena
+     * (only preview and metadata stay on the heap). Applies to new captures.
+     */
+    public void setOffHeapStorage(boolean enabled, int thresholdChars) {
+        runOnWriter(() -> {
+            if (enabled && arena == null) {
+                arena = new OffHeapArena(OFF_HEAP_ARENA_BYTES);
+            }
+            offHeapThresholdChars = enabled ? thresholdChars : Integer.MAX_VALUE;
+            return null;
+        });
+    }
+    
+    /**
+     * Stores entries of at least thresholdChars as content-defined chunks shared
+     * between near-identical entries. Entries big enough for the off-heap arena
+     * go there instead. Applies to new captures.
+     */
+    public void setChunkedStorage(boolean enabled, int thresholdChars) {
+        runOnWriter(() -> {
+            if (enabled && chunkStore == null) {
+                chunkStore = new ChunkStore();
+            }
+            chunkThresholdChars = enabled ? thresholdChars : Integer.MAX_VALUE;
+            return null;
+        });
+    }
+    
+    /**
+     * Turns on persistence to the given log file: entries saved there earlier are
+     * restored behind the current ones (payloads stay on disk until needed),
+     * current entries are written out, and every later change is appended.
+     * Passing null turns persistence off and deletes the log. Runs on the writer
+     * thread without waiting; done (may be null) is told on the EDT whether it worked.
+     */
+    public void setPersistence(Path logFile, Consumer<Boolean> done) {
+        runOnWriterAsync(() -> {
+            if (historyLog != null) {
+                // Entries restored from the log can't be decrypted once it is closed
+                for (ClipboardEntry entry : history.toList()) {
+                    if (historyLog.holds(entry.getPayload())) {
+                        entry.replacePayload(createPayload(entry.getContent()));
+                        history.reaccount(entry);
+                    }
+                }
+                Path previous = historyLog.getFile();
+                historyLog.close();
+                historyLog = null;
+                if (logFile == null) {
+                    HistoryLog.delete(previous);
+                    System.out.println("History persistence disabled");
+                }
+            }
+            if (logFile == null) {
+                return Boolean.TRUE;
+            }
+            
+            long start = System.nanoTime();
+            HistoryLog log = new HistoryLog(logFile, HistoryCipher.forLog(logFile));
+            List<HistoryLog.Record> saved = log.replay();
+            
+            // Write what this session already captured, oldest first, so the log matches memory
+            List<ClipboardEntry> current = history.toList();
+            for (int i = current.size() - 1; i >= 0; i--) {
+                ClipboardEntry entry = current.get(i);
+                if (isPersistable(entry)) {
+                    log.appendAdd(entry.getTimestamp(), entry.getFingerprint(), entry.getContent(), entry.getPreview());
+                }
+            }
+            
+            int restored = 0;
+            boolean full = false;
+            for (HistoryLog.Record record : saved) {
+                ClipboardEntry entry = new ClipboardEntry(log.payloadFor(record), record.getPreview(),
+                                                          record.getTimestamp(), null, record.getFingerprint());
+                int before = history.size();
+                full = full || !history.restoreOlder(entry);
+                if (history.size() > before) {
+                    recordEvent(HistoryEvent.Type.RESTORED, entry, null);
+                }
+                if (full) {
+                    // Drop what no longer fits from the log too, so compaction can reclaim it
+                    log.appendEvict(record.getFingerprint(), record.getCharLength());
+                } else {
+                    restored++;
+                }
+            }
+            historyLog = log;
+            publishSnapshot(); // Restored entries are enriched once shown or searched (requestEnrichment)
+            
+            System.out.printf("History persistence enabled (%s): restored %d of %d entries in %.1fms%n",
+                logFile, restored, saved.size(), (System.nanoTime() - start) / 1e6);
+            return Boolean.TRUE;
+        }, done == null ? null : ok -> done.accept(ok != null));
+    }
+    
+    public boolean isPersistenceEnabled() {
+        return historyLog != null;
+    }
+    
+    /**
+     * The chunk store, or null if chunked storage was never enabled
+     */
+    public ChunkStore getChunkStore() {
+        return chunkStore;
+    }
+    
+    /**
+     * Picks the storage for newly captured content (writer thread)
+     */
+    private EntryPayload createPayload(String content) {
+        if (content.length() >= offHeapThresholdChars) {
+            EntryPayload offHeap = arena.store(content);
+            if (offHeap != null) {
+                return offHeap;
+            }
+            // Arena full - fall through to on-heap storage
+        }
+        if (content.length() >= chunkThresholdChars) {
+            return chunkStore.intern(content);
+        }
+        return new HeapPayload(content);
+    }
+    
+    /**
+     * Compresses entries ranked past afterRank (0 = most recent) or last copied
+     * more than afterAgeMs ago. They're inflated again lazily on access.
+     */
+    public void setCompression(boolean enabled, int afterRank, long afterAgeMs) {
+        runOnWriter(() -> {
+            if (enabled) {
+                if (compressionTier == null) {
+                    compressionTier = new CompressionTier();
+                }
+                compressAfterRank = afterRank;
+                compressAfterAgeMs = afterAgeMs;
+            } else {
+                compressionTier = null;
+            }
+            scheduleSweep();
+            sweepAgedEntries();
+            return null;
+        });
+    }
+    
+    /**
+     * The compression tier, or null while compression is off
+     */
+    public CompressionTier getCompressionTier() {
+        return compressionTier;
+    }
+    
+    /**
+     * Runs the sweep while compression or the cold tier is on: both go by age,
+     * so they need it even when nothing is copied
+     */
+    private void scheduleSweep() {
+        boolean needed = compressionTier != null || coldTier != null || history.hasRetiredPayloads();
+        if (needed && sweep == null) {
+            sweep = scheduler.scheduleWithFixedDelay(this::sweepAgedEntries,
+                SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } else if (!needed && sweep != null) {
+            sweep.cancel(false);
+            sweep = null;
+        }
+    }
+    
+    /**
+     * Releases payloads evicted or replaced since the last sweep, compresses
+     * entries past the compression limits and drops cold records past the cold
+     * tier's, which otherwise only happens when something is demoted
+     */
+    private void sweepAgedEntries() {
+        long now = System.currentTimeMillis();
+        boolean changed = history.releaseRetiredPayloads();
+        CompressionTier tier = compressionTier;
+        if (tier != null && history.compressColdEntries(tier, compressAfterRank, compressAfterAgeMs, now)) {
+            changed = true;
+        }
+        ColdTier cold = coldTier;
+        if (cold != null && cold.expire(now)) {
+            changed = true;
+        }
+        if (changed) {
+            publishSnapshot(); // Retained bytes or cold records changed
+        }
+        scheduleSweep(); // Stops once no tier needs it and nothing is left to release
+    }
+    
+    /**
+     * The off-heap arena, or null if off-heap storage was never enabled
+     */
+    public OffHeapArena getOffHeapArena() {
+        return arena;
+    }
+    
+    public long getRetainedBytes() {
+        return snapshot.get().getRetainedBytes();
+    }
+    
+    public AdaptivePollScheduler getPollScheduler() {
+        return poller;
     }
     
     public void startMonitoring() {
-        // Check clipboard every 500ms for changes
-        scheduler.scheduleAtFixedRate(this::checkClipboard, 0, 500, TimeUnit.MILLISECONDS);
+        startMonitoring(null);
+    }
+    
+    /**
+     * @param afterFirstCheck run on the writer thread once the clipboard has
+     *                        been read for the first time, or null
+     */
+    public void startMonitoring(Runnable afterFirstCheck) {
+        // Push notifications are handled on the scheduler thread like polls
+        source.start(() -> {
+            // More changes tend to follow; poll fast if push isn't trusted yet
+            poller.noteActivity();
+            runOnWriterAsync(() -> {
+                lastImageProbeAt = 0; // A real change - don't rate-limit image probes
+                checkClipboard();
+            });
+        });
+        
+        // Initial read; falls back to polling if the source can't push
+        scheduler.execute(() -> {
+            checkClipboard();
+            if (afterFirstCheck != null) {
+                afterFirstCheck.run();
+            }
+        });
         System.out.println("Clipboard monitoring started...");
     }
+    
+    /**
+     * Puts text on the clipboard through the monitored source, so push
+     * notifications stay armed after a paste
+     */
+    public void copyToClipboard(String text) {
+        source.setContents(new StringSelection(text));
+    }
+    
+    /**
+     * Puts an entry back on the clipboard with all the flavors it was copied with
+     * (EDT only). A cold entry is promoted back into the history first, on the
+     * writer thread, so copied runs once the clipboard actually holds the entry.
+     */
+    public void copyToClipboard(ClipboardEntry entry, Runnable copied) {
+        if (entry.getPayload().isCold()) {
+            coldPastes.incrementAndGet();
+            runOnWriterAsync(() -> promote(entry), promoted -> {
+                source.setContents((promoted != null ? promoted : entry).toTransferable());
+                copied.run();
+            });
+            return;
+        }
+        hotPastes.incrementAndGet();
+        source.setContents(entry.toTransferable());
+        copied.run();
+    }
+    
+    /**
+     * Copies a cold entry's content back into the history as the most recent
+     * entry; adding it drops the cold record (writer thread)
+     */
+    private ClipboardEntry promote(ClipboardEntry entry) {
+        String content = entry.getContent();
+        ClipboardEntry promoted = addToHistory(content, null);
+        lastClipboardContent = content; // The paste itself isn't a new copy
+        return promoted;
+    }
+    
+    /**
+     * Keeps entries evicted from the history in a compressed, searchable cold
+     * tier - up to maxEntries of them, for up to maxAgeMs - instead of dropping
+     * them. While it's on, calling this again only applies the new limits; the
+     * records it holds are kept. Turning it off drops them.
+     */
+    public void setColdTier(boolean enabled, int maxEntries, long maxAgeMs) {
+        runOnWriter(() -> {
+            if (!enabled) {
+                coldTier = null;
+            } else if (coldTier == null) {
+                coldTier = new ColdTier(maxEntries, maxAgeMs);
+            } else {
+                coldTier.setLimits(maxEntries, maxAgeMs, System.currentTimeMillis());
+            }
+            scheduleSweep();
+            publishSnapshot();
+            return null;
+        });
+    }
+    
+    /**
+     * The cold tier, or null while it's off
+     */
+    public ColdTier getColdTier() {
+        return coldTier;
+    }
+    
+    /**
+     * Entries and memory per tier, and where pastes came from
+     */
+    public String getTierStatsSummary() {
+        HistorySnapshot current = snapshot.get();
+        long hot = hotPastes.get();
+        long cold = coldPastes.get();
+        ColdTier tier = coldTier;
+        return String.format("hot: %d entries (~%d KB); cold: %s; pastes: %d hot, %d cold (hot hit rate %.1f%%)",
+            current.size(), current.getRetainedBytes() / 1024, tier == null ? "off" : tier.getStatsSummary(),
+            hot, cold, hot + cold == 0 ? 100.0 : 100.0 * hot / (hot + cold));
+    }
 
     /**
-     * Clears all clipboard history entries
+     * Clears all clipboard history entries without waiting; cleared (may be null)
+     * runs on the EDT afterwards
      */
-    public void clearHistory() {
-        synchronized(history) {  // Thread-safe clearing
+    public void clearHistory(Runnable cleared) {
+        runOnWriterAsync(() -> {
+            List<ClipboardEntry> entries = history.toList();
             history.clear();
+            scheduleSweep(); // Releases the cleared payloads
+            searchIndex.clear(entries);
+            contentTypes.clear();
+            if (coldTier != null) {
+                coldTier.clear();
+            }
             lastClipboardContent = "";  // Reset last content to avoid immediate re-add
+            recordEvent(HistoryEvent.Type.CLEARED, null, null);
+            publishSnapshot();
+            System.out.println("Clipboard history cleared");
+            return Boolean.TRUE;
+        }, cleared == null ? null : ok -> {
+            if (ok != null) {
+                cleared.run();
+            }
+        });
+    }
+    
+    /**
+     * Runs a history mutation on the writer thread and waits for it, so callers
+     * see the result in the next snapshot. Only for setup and shutdown - never
+     * call it from the EDT, use the async form with a callback instead.
+     */
+    private <T> T runOnWriter(Callable<T> mutation) {
+        try {
+            if (Thread.currentThread() == writerThread || scheduler.isShutdown()) {
+                return mutation.call();
+            }
+            return scheduler.submit(mutation).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            System.err.println("Error updating clipboard history: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Enriches an entry that hasn't been yet (any thread). Entries restored from
+     * the log aren't enriched up front, since that would decrypt every one of
+     * them; the list and search ask for each when they first reach it.
+     */
+    public void requestEnrichment(ClipboardEntry entry) {
+        if (entry.getMetadata() != null || entry.isEnrichmentQueued()) {
+            return;
+        }
+        runOnWriterAsync(() -> {
+            // Only while it's still in the history, so its payload isn't released mid-read
+            if (entry.getSlot() != null && !entry.isEnrichmentQueued()) {
+                submitEnrichment(entry, entry.getContent());
+            }
+        });
+    }
+    
+    /**
+     * Hands an entry to the enrichment pipeline once (writer thread)
+     */
+    private void submitEnrichment(ClipboardEntry entry, String content) {
+        entry.setEnrichmentQueued();
+        enrichment.submit(entry, content, this::entryEnriched);
+    }
+    
+    /**
+     * Called on an enrichment worker; hands the entry to the writer in batches
+     */
+    private void entryEnriched(ClipboardEntry entry, EntryMetadata metadata) {
+        entry.setMetadata(metadata);
+        enrichedEntries.add(entry);
+        if (enrichmentDrainScheduled.compareAndSet(false, true)) {
+            runOnWriterAsync(this::applyEnrichment);
         }
-        System.out.println("Clipboard history cleared");
     }
     
-    private void checkClipboard() {
+    /**
+     * Indexes enriched entries, by text and by type, and accounts for their
+     * search keys (writer thread)
+     */
+    private void applyEnrichment() {
+        enrichmentDrainScheduled.set(false);
+        boolean changed = false;
+        ClipboardEntry entry;
+        while ((entry = enrichedEntries.poll()) != null) {
+            // Indexed first, so an eviction triggered by the larger size also unindexes it
+            searchIndex.add(entry);
+            contentTypes.add(entry);
+            if (history.reaccount(entry)) {
+                changed = true;
+                // Views may show its metadata, or be filtering by type
+                recordEvent(HistoryEvent.Type.UPDATED, entry.getSlot().getEntry(), null);
+            } else {
+                // Evicted or cleared while it was being enriched
+                contentTypes.remove(entry);
+                searchIndex.remove(entry);
+            }
+        }
+        if (changed) {
+            publishSnapshot();
+        }
+    }
+    
+    /**
+     * Queues a delta for the next publish and mirrors it into the persistent
+     * log (writer thread)
+     */
+    private void recordEvent(HistoryEvent.Type type, ClipboardEntry entry, ClipboardEntry previous) {
+        // Only the writer publishes, so the next version is known now
+        long version = snapshot.get().getVersion() + 1;
+        pendingEvents.add(new HistoryEvent(type, entry, previous, version));
+        if (historyLog != null) {
+            logEvent(type, entry);
+        }
+    }
+    
+    /**
+     * Mirrors a history change into the persistent log (writer thread)
+     */
+    private void logEvent(HistoryEvent.Type type, ClipboardEntry entry) {
+        switch (type) {
+            case INSERTED:
+                if (isPersistable(entry)) {
+                    historyLog.appendAdd(entry.getTimestamp(), entry.getFingerprint(),
+                                         entry.getContent(), entry.getPreview());
+                }
+                break;
+            case MOVED_TO_FRONT:
+                historyLog.appendTouch(entry.getTimestamp(), entry.getFingerprint(), entry.getLength());
+                break;
+            case EVICTED:
+                historyLog.appendEvict(entry.getFingerprint(), entry.getLength());
+                break;
+            case CLEARED:
+                historyLog.appendClear();
+                break;
+        }
+    }
+    
+    /**
+     * Only text is persisted; image-only copies stay in memory
+     */
+    private static boolean isPersistable(ClipboardEntry entry) {
+        return entry.getCaptured() == null || !entry.getCaptured().isImageOnly();
+    }
+    
+    /**
+     * Publishes the writer's current state as a new immutable version and
+     * notifies listeners of the deltas that led to it
+     */
+    private void publishSnapshot() {
+        ColdTier cold = coldTier;
+        HistorySnapshot next = new HistorySnapshot(snapshot.get().getVersion() + 1, history.toList(),
+                                                   history.getRetainedBytes(), cold == null ? null : cold.view());
+        snapshot.set(next);
+        
+        if (!pendingEvents.isEmpty()) {
+            List<HistoryEvent> events = Collections.unmodifiableList(new ArrayList<>(pendingEvents));
+            pendingEvents.clear();
+            for (HistoryListener listener : listeners) {
+                try {
+                    listener.historyChanged(events, next);
+                } catch (Exception e) {
+                    System.err.println("Error notifying history listener: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads the clipboard and captures new content.
+     * @return true if a new entry was added
+     */
+    @SuppressWarnings("unchecked")
+    private boolean checkClipboard() {
+        boolean changed = false;
         try {
-            if (clipboard.isDataFlavorAvailable(DataFlavor.stringFlavor)) {
-                String currentContent = (String) clipboard.getData(DataFlavor.stringFlavor);
+            Transferable contents = source.getContents();
+            if (contents != null) {
+                String text = contents.isDataFlavorSupported(DataFlavor.stringFlavor)
+                    ? (String) contents.getTransferData(DataFlavor.stringFlavor) : null;
+                List<File> files = contents.isDataFlavorSupported(DataFlavor.javaFileListFlavor)
+                    ? (List<File>) contents.getTransferData(DataFlavor.javaFileListFlavor) : null;
+                
+                // File copies are described by their paths, everything else by its text
+                String currentContent = files != null && !files.isEmpty() ? joinPaths(files) : text;
                 
                 // Only add to history if content has changed and is not empty
                 if (currentContent != null && 
                     !currentContent.trim().isEmpty() && 
                     !currentContent.equals(lastClipboardContent)) {
                     
-                    addToHistory(currentContent);
+                    // Cheap descriptor only - heavy flavors are materialized in the background
+                    CapturedContents captured = CapturedContents.describe(contents, text, files);
+                    addToHistory(currentContent, captured);
                     lastClipboardContent = currentContent;
+                    lastImageIdentity = 0;
+                    changed = true;
+                } else if (currentContent == null && contents.isDataFlavorSupported(DataFlavor.imageFlavor)) {
+                    probeImage(contents);
                 }
             }
+            source.contentsObserved(contents);
         } catch (Exception e) {
             System.err.println("Error accessing clipboard: " + e.getMessage());
         }
+        updatePolling();
+        return changed;
     }
     
-    private void addToHistory(String content) {
-        ClipboardEntry entry = new ClipboardEntry(content, System.currentTimeMillis());
+    /**
+     * Polls only while the source can't guarantee a push notification
+     */
+    private void updatePolling() {
+        if (scheduler.isShutdown()) {
+            return;
+        }
         
-        // Remove duplicate if it exists
-        history.removeIf(e -> e.getContent().equals(content));
+        if (source.isPushActive()) {
+            poller.stop();
+        } else {
+            poller.start();
+        }
+    }
+    
+    private static String joinPaths(List<File> files) {
+        StringBuilder paths = new StringBuilder();
+        for (File file : files) {
+            if (paths.length() > 0) {
+                paths.append('\n');
+            }
+            paths.append(file.getAbsolutePath());
+        }
+        return paths.toString();
+    }
+    
+    /**
+     * Image-only copies have no cheap identity, so the image is decoded on the
+     * materializer thread and compared by pixel hash there. Probes back off
+     * while the same image stays on the clipboard.
+     */
+    private void probeImage(Transferable contents) {
+        long now = System.currentTimeMillis();
+        if (imageProbeInFlight || now - lastImageProbeAt < imageProbeIntervalMs) {
+            return;
+        }
+        imageProbeInFlight = true;
+        lastImageProbeAt = now;
         
-        // Add to beginning of list (most recent first)
-        history.add(0, entry);
+        CapturedContents captured = CapturedContents.describe(contents, null, null);
+        if (captured == null) {
+            imageProbeInFlight = false;
+            return;
+        }
+        materializer.execute(() -> {
+            captured.materialize();
+            runOnWriterAsync(() -> {
+                imageProbeInFlight = false;
+                if (captured.getIdentityHash() == lastImageIdentity) {
+                    imageProbeIntervalMs = Math.min(imageProbeIntervalMs * 2, MAX_IMAGE_PROBE_INTERVAL_MS);
+                    return;
+                }
+                imageProbeIntervalMs = MIN_IMAGE_PROBE_INTERVAL_MS;
+                lastImageIdentity = captured.getIdentityHash();
+                lastClipboardContent = ""; // Re-copying the previous text counts as a change again
+                addToHistory(String.format("Image %d × %d", captured.getImageWidth(), captured.getImageHeight()),
+                             captured);
+            });
+        });
+    }
+    
+    private void runOnWriterAsync(Runnable task) {
+        if (!scheduler.isShutdown()) {
+            scheduler.execute(task);
+        }
+    }
+    
+    /**
+     * Runs a history mutation on the writer thread without waiting for it, then
+     * hands its result to done (if not null) on the EDT - null if it failed
+     */
+    private <T> void runOnWriterAsync(Callable<T> mutation, Consumer<T> done) {
+        runOnWriterAsync(() -> {
+            T result = null;
+            try {
+                result = mutation.call();
+            } catch (Exception e) {
+                System.err.println("Error updating clipboard history: " + e.getMessage());
+            }
+            if (done != null) {
+                T outcome = result;
+                SwingUtilities.invokeLater(() -> done.accept(outcome));
+            }
+        });
+    }
+    
+    private ClipboardEntry addToHistory(String content, CapturedContents captured) {
+        // Moves an existing duplicate to the front, evicts past the limits
+        ClipboardEntry entry = history.add(content, captured, System.currentTimeMillis());
+        if (entry.getMetadata() == null) {
+            if (!entry.isEnrichmentQueued()) {
+                submitEnrichment(entry, content);
+            }
+            if (coldTier != null) {
+                coldTier.promote(content, entry.getFingerprint()); // Copied again - it's hot now
+            }
+        }
         
-        // Limit history size to 50 items
-        if (history.size() > 50) {
-            history.remove(history.size() - 1);
+        if (captured != null && !captured.isMaterialized()) {
+            // Pull the heavy flavors out of the clipboard owner off the writer thread,
+            // then account for them
+            materializer.execute(() -> {
+                captured.materialize();
+                runOnWriterAsync(() -> {
+                    if (history.reaccount(entry)) {
+                        publishSnapshot();
+                    }
+                });
+            });
         }
+        publishSnapshot();
         
         System.out.println("Added to clipboard history: " + 
                           (content.length() > 50 ? content.substring(0, 50) + "..." : content));
+        return entry;
     }
     
+    /**
+     * Current history, most-recent-first. Read-only and never copied.
+     */
     public List<ClipboardEntry> getHistory() {
-        return new ArrayList<>(history);
+        return snapshot.get().getEntries();
+    }
+    
+    /**
+     * Current version-stamped history snapshot (O(1), lock-free)
+     */
+    public HistorySnapshot getSnapshot() {
+        return snapshot.get();
+    }
+    
+    public long getHistoryVersion() {
+        return snapshot.get().getVersion();
+    }
+    
+    /**
+     * True if the history changed after the given version was published
+     */
+    public boolean hasChangedSince(long version) {
+        return snapshot.get().isNewerThan(version);
     }
     
     public void shutdown() {
+        source.stop();
         scheduler.shutdown();
+        materializer.shutdownNow();
+        enrichment.shutdown();
+        try {
+            // Let an in-flight capture finish before the log is closed
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (historyLog != null) {
+            historyLog.close();
+            System.out.println("History log stats: " + historyLog.getStatsSummary());
+            System.out.println("History encryption stats: " + historyLog.getCipher().getStatsSummary());
+        }
+        System.out.println("Clipboard polling stats: " + poller.getStatsSummary());
+        System.out.println("Clipboard enrichment stats: " + enrichment.getStatsSummary());
+        System.out.println("Clipboard classifier stats: " + classifier.getStatsSummary());
+        if (compressionTier != null) {
+            System.out.println("Clipboard compression stats: " + compressionTier.getStatsSummary());
+        }
+        System.out.println("Clipboard tier stats: " + getTierStatsSummary());
     }
     
     // Inner class to represent clipboard entries
     public static class ClipboardEntry {
-        private final String content;
+        private static final long ENTRY_OVERHEAD_BYTES = 40;
+        private static final int MAX_SEARCH_KEY_CHARS = 16 * 1024; // Larger entries are scanned instead
+        static final int PREVIEW_CHARS = 60;
+        
+        private final String preview; // Always on-heap, even when the payload isn't
         private final long timestamp;
+        private final CapturedContents captured; // Other flavors of the copy, or null
+        private final long fingerprint; // ClipboardHistory.fingerprint of the content
+        private final Derived derived; // Shared with copies of this entry, payload included
         
         public ClipboardEntry(String content, long timestamp) {
-            this.content = content;
+            this(new HeapPayload(content), buildPreview(content), timestamp, null,
+                 ClipboardHistory.fingerprint(content));
+        }
+        
+        public ClipboardEntry(EntryPayload payload, String preview, long timestamp,
+                              CapturedContents captured, long fingerprint) {
+            this(preview, timestamp, captured, fingerprint, new Derived(payload));
+        }
+        
+        private ClipboardEntry(String preview, long timestamp, CapturedContents captured,
+                               long fingerprint, Derived derived) {
+            this.preview = preview;
             this.timestamp = timestamp;
+            this.captured = captured;
+            this.fingerprint = fingerprint;
+            this.derived = derived;
+        }
+        
+        /**
+         * Same content (and payload storage) with a new timestamp
+         */
+        public ClipboardEntry withTimestamp(long newTimestamp) {
+            return new ClipboardEntry(preview, newTimestamp, captured, fingerprint, derived);
         }
         
+        /**
+         * Same content (and payload storage) re-copied with a new set of flavors
+         */
+        public ClipboardEntry withCapture(long newTimestamp, CapturedContents newCaptured) {
+            return new ClipboardEntry(preview, newTimestamp, newCaptured, fingerprint, derived);
+        }
+        
+        /**
+         * 64-bit hash of the content, computed once at capture
+         */
+        public long getFingerprint() {
+            return fingerprint;
+        }
+        
+        /**
+         * HTML, RTF, image or file flavors the copy offered besides text (null if none)
+         */
+        public CapturedContents getCaptured() {
+            return captured;
+        }
+        
+        long getIdentityHash() {
+            return captured == null ? 0 : captured.getIdentityHash();
+        }
+        
+        /**
+         * What to put back on the clipboard when pasting - all original flavors
+         */
+        public Transferable toTransferable() {
+            if (captured == null) {
+                return new StringSelection(getContent());
+            }
+            String text = captured.hasKind(CapturedContents.Kind.TEXT) ? getContent() : null;
+            return captured.toTransferable(text);
+        }
+        
+        /**
+         * Full content; materialized from its storage for off-heap payloads
+         */
         public String getContent() {
-            return content;
+            return derived.payload.getContent();
+        }
+        
+        /**
+         * Content length in chars, without materializing it
+         */
+        public int getLength() {
+            return derived.payload.length();
         }
         
         public long getTimestamp() {
             return timestamp;
         }
         
+        public EntryPayload getPayload() {
+            return derived.payload;
+        }
+        
+        /**
+         * Moves the content to different storage (writer thread only). Copies
+         * of the entry, e.g. in older snapshots, see the new payload too.
+         */
+        void replacePayload(EntryPayload newPayload) {
+            derived.payload = newPayload;
+        }
+        
+        /**
+         * Approximate memory (heap and off-heap) retained by this entry,
+         * used for the history byte budget
+         */
+        public long getAccountedBytes() {
+            long capturedBytes = captured == null ? 0 : captured.getAccountedBytes();
+            EntryPayload payload = derived.payload;
+            String key = getSearchKey();
+            long searchKeyBytes = key == null ? 0 : HeapPayload.estimateRetainedBytes(key);
+            return ENTRY_OVERHEAD_BYTES + preview.length() + payload.getHeapBytes() +
+                   payload.getOffHeapBytes() + capturedBytes + searchKeyBytes;
+        }
+        
         public String getPreview() {
-            if (content.length() <= 60) {
-                return content.replaceAll("\\s+", " ").trim();
+            return preview;
+        }
+        
+        /**
+         * Derived data from the enrichment pipeline, or null until it has run
+         */
+        public EntryMetadata getMetadata() {
+            return derived.metadata;
+        }
+        
+        /**
+         * Set once by the writer when enrichment finishes; copies see it too
+         */
+        void setMetadata(EntryMetadata metadata) {
+            derived.metadata = metadata;
+        }
+        
+        /**
+         * Lowercased content for substring search. Null until the entry is
+         * enriched, and for entries too large to keep a second copy of on the
+         * heap; search scans the content of those.
+         */
+        String getSearchKey() {
+            EntryMetadata metadata = derived.metadata;
+            return metadata == null ? null : metadata.getSearchKey();
+        }
+        
+        boolean isEnrichmentQueued() {
+            return derived.enrichmentQueued;
+        }
+        
+        void setEnrichmentQueued() {
+            derived.enrichmentQueued = true;
+        }
+        
+        /**
+         * The entry's place in the ClipboardHistory, shared with its copies;
+         * null once it's evicted (writer thread only)
+         */
+        ClipboardHistory.Slot getSlot() {
+            return derived.slot;
+        }
+        
+        void setSlot(ClipboardHistory.Slot slot) {
+            derived.slot = slot;
+        }
+        
+        int getIndexId() {
+            return derived.indexId;
+        }
+        
+        void setIndexId(int indexId) {
+            derived.indexId = indexId;
+        }
+        
+        /**
+         * When the entry was indexed, in TrigramIndex order; only meaningful
+         * while it has an index id
+         */
+        long getIndexSeq() {
+            return derived.indexSeq;
+        }
+        
+        void setIndexSeq(long indexSeq) {
+            derived.indexSeq = indexSeq;
+        }
+        
+        static String buildSearchKey(String content) {
+            return content.length() <= MAX_SEARCH_KEY_CHARS ? content.toLowerCase(Locale.ROOT) : null;
+        }
+        
+        /**
+         * First PREVIEW_CHARS chars with whitespace runs collapsed to one space
+         * and trimmed, in one pass
+         */
+        static String buildPreview(String content) {
+            int end = Math.min(content.length(), PREVIEW_CHARS);
+            StringBuilder preview = new StringBuilder(end + 3);
+            boolean pendingSpace = false;
+            for (int i = 0; i < end; i++) {
+                char c = content.charAt(i);
+                if (isCollapsedWhitespace(c)) {
+                    pendingSpace = preview.length() > 0;
+                } else {
+                    if (pendingSpace) {
+                        preview.append(' ');
+                        pendingSpace = false;
+                    }
+                    preview.append(c);
+                }
+            }
+            if (content.length() > PREVIEW_CHARS) {
+                preview.append("...");
+            }
+            return preview.toString();
+        }
+        
+        /**
+         * Whitespace that previews collapse (the regex \s set)
+         */
+        static boolean isCollapsedWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+        }
+        
+        /**
+         * What copies of an entry share: the storage of its content, its
+         * enrichment results and its place in the history and search index
+         */
+        private static final class Derived {
+            volatile EntryPayload payload; // Swapped when moved between storage tiers
+            volatile EntryMetadata metadata;
+            volatile boolean enrichmentQueued; // Set by the writer when submitted to the pipeline
+            volatile int indexId = -1;
+            volatile long indexSeq;
+            ClipboardHistory.Slot slot; // Writer thread only
+            
+            Derived(EntryPayload payload) {
+                this.payload = payload;
             }
-            return content.substring(0, 60).replaceAll("\\s+", " ").trim() + "...";
         }
     }
 }
\ No newline at end of file
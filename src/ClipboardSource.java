@@ -0,0 +1,49 @@
+import java.awt.datatransfer.Transferable;
+
+/**
+ * Abstraction over where clipboard contents come from.
+ * Lets ClipboardMonitor be driven by the real system clipboard or by an
+ * in-memory fake (for headless testing).
+ */
+public interface ClipboardSource {
+
+    /**
+     * Notified by push-capable sources whenever the clipboard may have changed.
+     * Callbacks can arrive on any thread.
+     */
+    interface ChangeListener {
+        void clipboardChanged();
+    }
+
+    /**
+     * Returns the current clipboard contents, or null if the clipboard is empty
+     */
+    Transferable getContents() throws Exception;
+
+    /**
+     * Replaces the clipboard contents
+     */
+    void setContents(Transferable contents);
+
+    /**
+     * Starts delivering change notifications to the given listener
+     */
+    void start(ChangeListener listener);
+
+    /**
+     * Stops delivering change notifications
+     */
+    void stop();
+
+    /**
+     * True while the source is guaranteed to report the next external change
+     * through the listener, i.e. polling can be suspended.
+     */
+    boolean isPushActive();
+
+    /**
+     * Called after the monitor has read the clipboard, giving the source a chance
+     * to (re)arm push notifications for the contents just seen.
+     */
+    void contentsObserved(Transferable contents);
+}
@@ -0,0 +1,572 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Searchable cold tier behind the in-memory history: entries evicted from
+ * the hot tier (ClipboardHistory) are kept as compact compressed records
+ * instead of being dropped, for up to maxEntries entries and maxAgeMs.
+ *
+ * A record's content is Deflate-compressed (stored raw if that doesn't help)
+ * and appended to off-heap segments. On the heap a record is one slot in a
+ * few parallel arrays - timestamp, fingerprint, location, sizes, content
+ * types - plus a 64-bit mask of the chars it contains and a Bloom filter of
+ * its trigrams, 2 bits per trigram up to 128 bytes. Searches use those to
+ * skip records that can't match and only inflate the rest.
+ *
+ * The writer thread demotes, promotes (removes) and expires records. Searches
+ * read an immutable View published with each HistorySnapshot: appends only
+ * write past a View's end, and compaction builds new arrays and segments, so
+ * a View never changes under its reader.
+ */
+public class ColdTier {
+    private static final int SEGMENT_BYTES = 1024 * 1024;
+    private static final int MAX_DEMOTED_CHARS = 1024 * 1024; // Larger entries are dropped, not demoted
+    private static final int MIN_COMPRESSED_BYTES = 64; // Deflate can't beat its own overhead below this
+    private static final int BLOOM_BITS_PER_GRAM = 2; // ~40% false positives per trigram, ~1% for a five-gram query
+    private static final int MAX_BLOOM_WORDS = 16; // Long records saturate and are just inflated
+    private static final int INITIAL_CAPACITY = 256;
+    private static final long RECORD_HEAP_BYTES = 4 * 8 + 6 * 4; // One slot in each parallel array
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+    
+    private int maxEntries; // Writer thread only
+    private long maxAgeMs;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED); // Writer thread only
+    
+    // Records, oldest first (writer thread; Views share the arrays read-only)
+    private int count = 0;
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] fingerprints = new long[INITIAL_CAPACITY];
+    private long[] locations = new long[INITIAL_CAPACITY]; // Segment << 32 | offset
+    private long[] charMasks = new long[INITIAL_CAPACITY];
+    private int[] storedBytes = new int[INITIAL_CAPACITY]; // == utf8Bytes when stored raw
+    private int[] utf8Bytes = new int[INITIAL_CAPACITY];
+    private int[] charLengths = new int[INITIAL_CAPACITY];
+    private int[] lineCounts = new int[INITIAL_CAPACITY];
+    private int[] contentTypes = new int[INITIAL_CAPACITY];
+    private int[] bloomOffsets = new int[INITIAL_CAPACITY + 1]; // Record r's words: [offsets[r], offsets[r + 1])
+    private long[] blooms = new long[INITIAL_CAPACITY * 4];
+    private final BitSet live = new BitSet();
+    private int firstLive = 0;
+    private int liveCount = 0;
+    private long liveStoredBytes = 0;
+    private long deadStoredBytes = 0;
+    private ByteBuffer[] segments = new ByteBuffer[0]; // Copy-on-grow
+    private int segmentUsed = SEGMENT_BYTES; // Of the last segment; full until one exists
+    
+    // Statistics
+    private long demoted = 0;
+    private long tooLarge = 0;
+    private long promoted = 0;
+    private long expired = 0;
+    private long compactions = 0;
+    private long demoteNanos = 0;
+    private long demotedUtf8Bytes = 0;
+    private long demotedStoredBytes = 0;
+    private final AtomicLong inflations = new AtomicLong();
+    private final AtomicLong inflateNanos = new AtomicLong();
+    
+    public ColdTier(int maxEntries, long maxAgeMs) {
+        this.maxEntries = maxEntries;
+        this.maxAgeMs = maxAgeMs;
+    }
+    
+    /**
+     * Changes the limits, keeping the records held so far and dropping those
+     * past the new ones (writer thread)
+     * @return true if any were dropped
+     */
+    public boolean setLimits(int maxEntries, long maxAgeMs, long now) {
+        this.maxEntries = maxEntries;
+        this.maxAgeMs = maxAgeMs;
+        return expire(now);
+    }
+    
+    /**
+     * Keeps an entry leaving the hot tier (writer thread). Its content must
+     * still be readable. Other flavors (images, HTML...) aren't kept.
+     */
+    public void demote(ClipboardMonitor.ClipboardEntry entry, long now) {
+        if (entry.getLength() > MAX_DEMOTED_CHARS) {
+            tooLarge++;
+            return;
+        }
+        long start = System.nanoTime();
+        String content = entry.getContent();
+        byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+        byte[] stored = utf8;
+        int storedLength = utf8.length;
+        if (utf8.length >= MIN_COMPRESSED_BYTES) {
+            byte[] compressed = deflate(utf8);
+            if (compressed != null) {
+                stored = compressed;
+                storedLength = compressed.length;
+            }
+        }
+        
+        ensureCapacity(count + 1, bloomWords(content.length()));
+        int record = count;
+        timestamps[record] = entry.getTimestamp();
+        fingerprints[record] = entry.getFingerprint();
+        locations[record] = append(stored, storedLength);
+        storedBytes[record] = storedLength;
+        utf8Bytes[record] = utf8.length;
+        charLengths[record] = content.length();
+        EntryMetadata metadata = entry.getMetadata();
+        lineCounts[record] = metadata == null ? 0 : metadata.getLineCount();
+        contentTypes[record] = metadata == null ? 0 : metadata.getContentTypes();
+        charMasks[record] = charMask(content);
+        int bloomStart = bloomOffsets[record];
+        int words = bloomWords(content.length());
+        addTrigrams(content, blooms, bloomStart, words);
+        bloomOffsets[record + 1] = bloomStart + words;
+        live.set(record);
+        count++;
+        liveCount++;
+        liveStoredBytes += storedLength;
+        
+        demoted++;
+        demotedUtf8Bytes += utf8.length;
+        demotedStoredBytes += storedLength;
+        demoteNanos += System.nanoTime() - start;
+        expire(now);
+    }
+    
+    /**
+     * Drops the cold copy of content that was just copied again or pasted back
+     * into the hot tier (writer thread)
+     * @return true if there was one
+     */
+    public boolean promote(String content, long fingerprint) {
+        for (int record = count - 1; record >= firstLive; record--) {
+            if (fingerprints[record] == fingerprint && live.get(record) &&
+                charLengths[record] == content.length() && content.equals(readContent(record))) {
+                kill(record);
+                promoted++;
+                compactIfSparse();
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Drops records past the entry limit or older than the age limit (writer thread)
+     * @return true if any were dropped
+     */
+    public boolean expire(long now) {
+        long before = expired;
+        while (firstLive < count &&
+               (liveCount > maxEntries || now - timestamps[firstLive] > maxAgeMs || !live.get(firstLive))) {
+            if (live.get(firstLive)) {
+                kill(firstLive);
+                expired++;
+            }
+            firstLive++;
+        }
+        compactIfSparse();
+        return expired != before;
+    }
+    
+    public void clear() {
+        for (int record = live.nextSetBit(0); record >= 0; record = live.nextSetBit(record + 1)) {
+            kill(record);
+        }
+        compact();
+    }
+    
+    /**
+     * Read-only view of the records as of now, for a HistorySnapshot
+     */
+    public View view() {
+        return new View();
+    }
+    
+    private void kill(int record) {
+        live.clear(record);
+        liveCount--;
+        liveStoredBytes -= storedBytes[record];
+        deadStoredBytes += storedBytes[record];
+    }
+    
+    /**
+     * Rewrites the live records into fresh arrays and segments once most of
+     * what's held is dead
+     */
+    private void compactIfSparse() {
+        int dead = count - liveCount;
+        if ((dead >= INITIAL_CAPACITY && dead > liveCount) ||
+            (deadStoredBytes >= SEGMENT_BYTES && deadStoredBytes > liveStoredBytes)) {
+            compact();
+        }
+    }
+    
+    private void compact() {
+        View old = view();
+        int capacity = Math.max(INITIAL_CAPACITY, liveCount * 2);
+        int liveWords = 0;
+        for (int record = old.live.nextSetBit(0); record >= 0; record = old.live.nextSetBit(record + 1)) {
+            liveWords += old.bloomOffsets[record + 1] - old.bloomOffsets[record];
+        }
+        timestamps = new long[capacity];
+        fingerprints = new long[capacity];
+        locations = new long[capacity];
+        charMasks = new long[capacity];
+        storedBytes = new int[capacity];
+        utf8Bytes = new int[capacity];
+        charLengths = new int[capacity];
+        lineCounts = new int[capacity];
+        contentTypes = new int[capacity];
+        bloomOffsets = new int[capacity + 1];
+        blooms = new long[Math.max(capacity * 4, liveWords * 2)];
+        segments = new ByteBuffer[0];
+        segmentUsed = SEGMENT_BYTES;
+        
+        int kept = 0;
+        for (int record = old.live.nextSetBit(0); record >= 0; record = old.live.nextSetBit(record + 1)) {
+            timestamps[kept] = old.timestamps[record];
+            fingerprints[kept] = old.fingerprints[record];
+            locations[kept] = append(old.readStored(record), old.storedBytes[record]);
+            charMasks[kept] = old.charMasks[record];
+            storedBytes[kept] = old.storedBytes[record];
+            utf8Bytes[kept] = old.utf8Bytes[record];
+            charLengths[kept] = old.charLengths[record];
+            lineCounts[kept] = old.lineCounts[record];
+            contentTypes[kept] = old.contentTypes[record];
+            int words = old.bloomOffsets[record + 1] - old.bloomOffsets[record];
+            System.arraycopy(old.blooms, old.bloomOffsets[record], blooms, bloomOffsets[kept], words);
+            bloomOffsets[kept + 1] = bloomOffsets[kept] + words;
+            kept++;
+        }
+        live.clear();
+        live.set(0, kept);
+        count = kept;
+        firstLive = 0;
+        deadStoredBytes = 0;
+        compactions++;
+    }
+    
+    private void ensureCapacity(int records, int bloomWords) {
+        if (records > timestamps.length) {
+            int capacity = timestamps.length * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            fingerprints = Arrays.copyOf(fingerprints, capacity);
+            locations = Arrays.copyOf(locations, capacity);
+            charMasks = Arrays.copyOf(charMasks, capacity);
+            storedBytes = Arrays.copyOf(storedBytes, capacity);
+            utf8Bytes = Arrays.copyOf(utf8Bytes, capacity);
+            charLengths = Arrays.copyOf(charLengths, capacity);
+            lineCounts = Arrays.copyOf(lineCounts, capacity);
+            contentTypes = Arrays.copyOf(contentTypes, capacity);
+            bloomOffsets = Arrays.copyOf(bloomOffsets, capacity + 1);
+        }
+        int bloomEnd = bloomOffsets[count] + bloomWords;
+        if (bloomEnd > blooms.length) {
+            blooms = Arrays.copyOf(blooms, Math.max(bloomEnd, blooms.length * 2));
+        }
+    }
+    
+    /**
+     * Copies bytes to the end of the last segment, starting a new one if they
+     * don't fit (records never span segments)
+     * @return the location
+     */
+    private long append(byte[] bytes, int length) {
+        if (segments.length == 0 || segmentUsed + length > SEGMENT_BYTES) {
+            // An oversized record gets a segment of its own
+            ByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[segments.length] = ByteBuffer.allocateDirect(Math.max(SEGMENT_BYTES, length));
+            segments = grown;
+            segmentUsed = 0;
+        }
+        int segment = segments.length - 1;
+        ByteBuffer target = segments[segment].duplicate();
+        target.position(segmentUsed);
+        target.put(bytes, 0, length);
+        long location = ((long) segment << 32) | segmentUsed;
+        segmentUsed = Math.min(segmentUsed + length, SEGMENT_BYTES);
+        return location;
+    }
+    
+    private String readContent(int record) {
+        return readContent(segments, locations[record], storedBytes[record], utf8Bytes[record]);
+    }
+    
+    /**
+     * Reads a record's stored bytes and inflates them unless they were stored raw
+     */
+    private String readContent(ByteBuffer[] segments, long location, int stored, int utf8Length) {
+        byte[] bytes = readStored(segments, location, stored);
+        if (stored == utf8Length) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        long start = System.nanoTime();
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        try {
+            inflater.setInput(bytes);
+            byte[] utf8 = new byte[utf8Length];
+            int length = 0;
+            while (length < utf8.length && !inflater.finished()) {
+                length += inflater.inflate(utf8, length, utf8.length - length);
+            }
+            return new String(utf8, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            System.err.println("Error decompressing cold clipboard entry: " + e.getMessage());
+            return "";
+        } finally {
+            inflations.incrementAndGet();
+            inflateNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+    
+    private static byte[] readStored(ByteBuffer[] segments, long location, int stored) {
+        ByteBuffer source = segments[(int) (location >>> 32)].duplicate();
+        source.position((int) location);
+        byte[] bytes = new byte[stored];
+        source.get(bytes);
+        return bytes;
+    }
+    
+    /**
+     * @return the compressed bytes, or null if they'd be no smaller
+     */
+    private byte[] deflate(byte[] utf8) {
+        deflater.reset();
+        deflater.setInput(utf8);
+        deflater.finish();
+        byte[] buffer = new byte[utf8.length];
+        int length = 0;
+        while (!deflater.finished() && length < buffer.length) {
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return deflater.finished() && length < utf8.length ? Arrays.copyOf(buffer, length) : null;
+    }
+    
+    /**
+     * Bloom filter size for a record: a power of two words, so bit indexes are masks
+     */
+    private static int bloomWords(int chars) {
+        int needed = Math.max(1, (Math.max(0, chars - 2) * BLOOM_BITS_PER_GRAM + 63) / 64);
+        return Math.min(MAX_BLOOM_WORDS, Integer.highestOneBit(needed * 2 - 1));
+    }
+    
+    private static void addTrigrams(String content, long[] blooms, int start, int words) {
+        int bits = words * 64;
+        for (int i = 0; i + 3 <= content.length(); i++) {
+            long hash = gramHash(Character.toLowerCase(content.charAt(i)), Character.toLowerCase(content.charAt(i + 1)),
+                                 Character.toLowerCase(content.charAt(i + 2)));
+            int first = (int) (hash & (bits - 1));
+            int second = (int) ((hash >>> 32) & (bits - 1));
+            blooms[start + (first >>> 6)] |= 1L << first;
+            blooms[start + (second >>> 6)] |= 1L << second;
+        }
+    }
+    
+    private static long gramHash(char a, char b, char c) {
+        long z = ((long) a << 32) | ((long) b << 16) | c;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+    
+    /**
+     * One bit per lowercased char, folded into 64
+     */
+    static long charMask(String text) {
+        long mask = 0;
+        for (int i = 0; i < text.length(); i++) {
+            mask |= 1L << (Character.toLowerCase(text.charAt(i)) & 63);
+        }
+        return mask;
+    }
+    
+    public int size() {
+        return liveCount;
+    }
+    
+    public long getPromotionCount() {
+        return promoted;
+    }
+    
+    /**
+     * Heap held by the record arrays and Bloom filters
+     */
+    public long getHeapBytes() {
+        return timestamps.length * RECORD_HEAP_BYTES + 4L * bloomOffsets.length + 8L * blooms.length;
+    }
+    
+    /**
+     * Off-heap segment capacity reserved
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (ByteBuffer segment : segments) {
+            bytes += segment.capacity();
+        }
+        return bytes;
+    }
+    
+    public String getStatsSummary() {
+        long inflated = inflations.get();
+        return String.format("%d entries (~%d KB heap, %d KB off-heap, %d KB live), %d demoted " +
+                             "(ratio %.2f, avg %.3fms), %d too large, %d promoted, %d expired, %d compactions, " +
+                             "%d inflations (avg %.3fms)",
+            liveCount, getHeapBytes() / 1024, getOffHeapBytes() / 1024, liveStoredBytes / 1024, demoted,
+            demotedStoredBytes == 0 ? 1.0 : (double) demotedUtf8Bytes / demotedStoredBytes,
+            demoted == 0 ? 0 : demoteNanos / 1e6 / demoted, tooLarge, promoted, expired, compactions,
+            inflated, inflated == 0 ? 0 : inflateNanos.get() / 1e6 / inflated);
+    }
+    
+    /**
+     * Precomputed filters for one normalized query
+     */
+    public static final class Probe {
+        private final long charMask;
+        private final long[] gramHashes; // Empty below three chars and for subsequence queries
+        
+        /**
+         * @param substring whether the query must appear as is (its trigrams can be
+         *                  checked), rather than as a subsequence
+         */
+        public Probe(String query, boolean substring) {
+            this.charMask = charMask(query);
+            this.gramHashes = new long[substring ? Math.max(0, query.length() - 2) : 0];
+            for (int i = 0; i < gramHashes.length; i++) {
+                gramHashes[i] = gramHash(query.charAt(i), query.charAt(i + 1), query.charAt(i + 2));
+            }
+        }
+    }
+    
+    /**
+     * The records as of one HistorySnapshot. Any thread.
+     */
+    public final class View {
+        private final int count = ColdTier.this.count;
+        private final long[] timestamps = ColdTier.this.timestamps;
+        private final long[] fingerprints = ColdTier.this.fingerprints;
+        private final long[] locations = ColdTier.this.locations;
+        private final long[] charMasks = ColdTier.this.charMasks;
+        private final int[] storedBytes = ColdTier.this.storedBytes;
+        private final int[] utf8Bytes = ColdTier.this.utf8Bytes;
+        private final int[] charLengths = ColdTier.this.charLengths;
+        private final int[] lineCounts = ColdTier.this.lineCounts;
+        private final int[] contentTypes = ColdTier.this.contentTypes;
+        private final int[] bloomOffsets = ColdTier.this.bloomOffsets;
+        private final long[] blooms = ColdTier.this.blooms;
+        private final BitSet live = (BitSet) ColdTier.this.live.clone();
+        private final ByteBuffer[] segments = ColdTier.this.segments;
+        
+        private View() {
+        }
+        
+        /**
+         * Record slots are 0 to size() - 1, oldest first; some may be dead
+         */
+        public int size() {
+            return count;
+        }
+        
+        public int getLiveCount() {
+            return live.cardinality();
+        }
+        
+        /**
+         * False only if the record is gone, or can't be of the types or contain
+         * the query: its char mask lacks a query char, or its Bloom filter a trigram
+         * @param types ContentType bits, 0 for any
+         */
+        public boolean mayMatch(int record, Probe probe, int types) {
+            if (!live.get(record) || (types != 0 && (contentTypes[record] & types) == 0) ||
+                (charMasks[record] & probe.charMask) != probe.charMask) {
+                return false;
+            }
+            int start = bloomOffsets[record];
+            int bits = (bloomOffsets[record + 1] - start) * 64;
+            for (long hash : probe.gramHashes) {
+                int first = (int) (hash & (bits - 1));
+                int second = (int) ((hash >>> 32) & (bits - 1));
+                if ((blooms[start + (first >>> 6)] & (1L << first)) == 0 ||
+                    (blooms[start + (second >>> 6)] & (1L << second)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        public String getContent(int record) {
+            return readContent(segments, locations[record], storedBytes[record], utf8Bytes[record]);
+        }
+        
+        private byte[] readStored(int record) {
+            return ColdTier.readStored(segments, locations[record], storedBytes[record]);
+        }
+        
+        /**
+         * A history entry for a record, to show and paste; content is the
+         * record's, already read
+         */
+        public ClipboardMonitor.ClipboardEntry toEntry(int record, String content) {
+            ClipboardMonitor.ClipboardEntry entry = new ClipboardMonitor.ClipboardEntry(new ColdPayload(this, record),
+                ClipboardMonitor.ClipboardEntry.buildPreview(content), timestamps[record], null, fingerprints[record]);
+            entry.setMetadata(new EntryMetadata.Builder().setUtf8Bytes(utf8Bytes[record])
+                .setLineCount(lineCounts[record]).setContentTypes(contentTypes[record]).build());
+            return entry;
+        }
+    }
+    
+    /**
+     * Content of a cold record, read back on access. Promoting it copies the
+     * content into a new hot entry; this payload never enters the hot tier.
+     */
+    private static final class ColdPayload implements EntryPayload {
+        private final View view;
+        private final int record;
+        
+        ColdPayload(View view, int record) {
+            this.view = view;
+            this.record = record;
+        }
+        
+        @Override
+        public String getContent() {
+            return view.getContent(record);
+        }
+        
+        @Override
+        public int length() {
+            return view.charLengths[record];
+        }
+        
+        @Override
+        public long getHeapBytes() {
+            return 24;
+        }
+        
+        @Override
+        public long getOffHeapBytes() {
+            return view.storedBytes[record];
+        }
+        
+        @Override
+        public boolean isCompressible() {
+            return false;
+        }
+        
+        @Override
+        public boolean isCold() {
+            return true;
+        }
+        
+        @Override
+        public void release() {
+            // The tier owns the record
+        }
+    }
+}
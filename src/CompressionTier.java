@@ -0,0 +1,208 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses cold history entries with Deflate and inflates them lazily.
+ *
+ * - compress() runs on the monitor's writer thread (one reusable Deflater)
+ * - getContent() on a compressed payload inflates on demand, any thread
+ * - Recently inflated contents sit in a small LRU cache, so scrolling back and
+ *   forth or pasting the same entry twice doesn't inflate it again
+ *
+ * Tracks the compression ratio and time spent in both directions, to tune
+ * heap use against paste latency.
+ */
+public class CompressionTier {
+    private static final int CACHE_ENTRIES = 8;
+    private static final long CACHE_MAX_CHARS = 4L * 1024 * 1024;
+    private static final double MIN_SAVINGS = 0.10; // Not worth it below 10%
+    
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Map<CompressedPayload, String> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedChars = 0;
+    
+    // Statistics
+    private final AtomicLong originalBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressions = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong decompressions = new AtomicLong();
+    private final AtomicLong decompressNanos = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    
+    /**
+     * Compresses the payload's content.
+     * @return the compressed payload, or null if the content doesn't compress well enough
+     */
+    public EntryPayload compress(EntryPayload payload) {
+        long start = System.nanoTime();
+        String content = payload.getContent();
+        byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+        
+        deflater.reset();
+        deflater.setInput(utf8);
+        deflater.finish();
+        byte[] buffer = new byte[Math.max(64, utf8.length / 2)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                if (length >= utf8.length * (1 - MIN_SAVINGS)) {
+                    compressNanos.addAndGet(System.nanoTime() - start);
+                    return null; // Incompressible - stop early
+                }
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        compressNanos.addAndGet(System.nanoTime() - start);
+        
+        if (length >= utf8.length * (1 - MIN_SAVINGS)) {
+            return null;
+        }
+        
+        compressions.incrementAndGet();
+        originalBytes.addAndGet(utf8.length);
+        compressedBytes.addAndGet(length);
+        return new CompressedPayload(Arrays.copyOf(buffer, length), utf8.length, content.length());
+    }
+    
+    private String inflate(CompressedPayload payload) {
+        synchronized (cache) {
+            String cached = cache.get(payload);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+        }
+        
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        String content;
+        try {
+            inflater.setInput(payload.data);
+            byte[] utf8 = new byte[payload.originalLength];
+            int length = 0;
+            while (length < utf8.length && !inflater.finished()) {
+                length += inflater.inflate(utf8, length, utf8.length - length);
+            }
+            content = new String(utf8, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            System.err.println("Error decompressing clipboard entry: " + e.getMessage());
+            return "";
+        } finally {
+            inflater.end();
+        }
+        decompressions.incrementAndGet();
+        decompressNanos.addAndGet(System.nanoTime() - start);
+        
+        synchronized (cache) {
+            if (content.length() <= CACHE_MAX_CHARS) {
+                if (cache.put(payload, content) == null) {
+                    cachedChars += content.length();
+                }
+                trimCache();
+            }
+        }
+        return content;
+    }
+    
+    private void trimCache() {
+        Iterator<Map.Entry<CompressedPayload, String>> it = cache.entrySet().iterator();
+        while ((cache.size() > CACHE_ENTRIES || cachedChars > CACHE_MAX_CHARS) && it.hasNext()) {
+            cachedChars -= it.next().getValue().length();
+            it.remove();
+        }
+    }
+    
+    private void evictFromCache(CompressedPayload payload) {
+        synchronized (cache) {
+            String removed = cache.remove(payload);
+            if (removed != null) {
+                cachedChars -= removed.length();
+            }
+        }
+    }
+    
+    /**
+     * Original size / compressed size over everything compressed so far
+     */
+    public double getCompressionRatio() {
+        long compressed = compressedBytes.get();
+        return compressed == 0 ? 1.0 : (double) originalBytes.get() / compressed;
+    }
+    
+    public long getCompressionCount() {
+        return compressions.get();
+    }
+    
+    public long getDecompressionCount() {
+        return decompressions.get();
+    }
+    
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+    
+    public long getCompressNanos() {
+        return compressNanos.get();
+    }
+    
+    public long getDecompressNanos() {
+        return decompressNanos.get();
+    }
+    
+    public String getStatsSummary() {
+        long inflations = Math.max(1, decompressions.get());
+        return String.format("%d entries compressed (ratio %.2f, %.1fms total), " +
+                             "%d inflations (avg %.2fms), %d cache hits",
+            compressions.get(), getCompressionRatio(), compressNanos.get() / 1e6,
+            decompressions.get(), decompressNanos.get() / 1e6 / inflations, cacheHits.get());
+    }
+    
+    /**
+     * Deflate-compressed content, inflated on access
+     */
+    private class CompressedPayload implements EntryPayload {
+        private final byte[] data;
+        private final int originalLength; // UTF-8 bytes
+        private final int charLength;
+        
+        CompressedPayload(byte[] data, int originalLength, int charLength) {
+            this.data = data;
+            this.originalLength = originalLength;
+            this.charLength = charLength;
+        }
+        
+        @Override
+        public String getContent() {
+            return inflate(this);
+        }
+        
+        @Override
+        public int length() {
+            return charLength;
+        }
+        
+        @Override
+        public long getHeapBytes() {
+            return 56 + data.length;
+        }
+        
+        @Override
+        public long getOffHeapBytes() {
+            return 0;
+        }
+        
+        @Override
+        public void release() {
+            evictFromCache(this);
+        }
+    }
+}
@@ -0,0 +1,630 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EnrichmentPipeline stage that tags an entry with the ContentTypes it looks
+ * like, by running a chain of classifiers over its content.
+ *
+ * Each built-in classifier is a single forward scan that gives up at the
+ * first char that rules its type out, so a paragraph of prose costs a few
+ * chars per classifier and only JSON is ever read to the end. Classifiers
+ * are timed one by one (average and worst case) so a slow one shows up in
+ * the stats. Content over MAX_CLASSIFIED_CHARS isn't classified at all.
+ */
+public class ContentClassifier implements EnrichmentPipeline.Stage {
+    
+    /**
+     * Recognizes one ContentType. Runs on an enrichment worker; must be
+     * thread-safe and must not keep the content.
+     */
+    public interface Classifier {
+        ContentType getType();
+        
+        /**
+         * Whether content[start, end) - already trimmed, never empty - is of this type
+         */
+        boolean matches(String content, int start, int end);
+    }
+    
+    public static final int MAX_CLASSIFIED_CHARS = 1024 * 1024;
+    
+    private final List<TimedClassifier> classifiers = new CopyOnWriteArrayList<>();
+    
+    // Statistics
+    private final AtomicLong skipped = new AtomicLong();
+    
+    public ContentClassifier() {
+        addClassifier(new UrlClassifier());
+        addClassifier(new FilePathClassifier());
+        addClassifier(new JsonClassifier());
+        addClassifier(new CodeClassifier());
+        addClassifier(new HexColorClassifier());
+        addClassifier(new EmailClassifier());
+    }
+    
+    /**
+     * Appends a classifier; it applies to entries enriched from now on
+     */
+    public void addClassifier(Classifier classifier) {
+        classifiers.add(new TimedClassifier(classifier));
+    }
+    
+    @Override
+    public String getName() {
+        return "content types";
+    }
+    
+    @Override
+    public void enrich(String content, EntryMetadata.Builder metadata) {
+        metadata.setContentTypes(classify(content));
+    }
+    
+    /**
+     * ContentType bits of every classifier that matches the content
+     */
+    public int classify(String content) {
+        if (content.length() > MAX_CLASSIFIED_CHARS) {
+            skipped.incrementAndGet();
+            return 0;
+        }
+        int start = 0;
+        int end = content.length();
+        while (start < end && Character.isWhitespace(content.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(content.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return 0;
+        }
+        
+        int types = 0;
+        for (TimedClassifier timed : classifiers) {
+            long begin = System.nanoTime();
+            boolean matched = timed.classifier.matches(content, start, end);
+            timed.record(System.nanoTime() - begin, matched);
+            if (matched) {
+                types |= timed.classifier.getType().bit();
+            }
+        }
+        return types;
+    }
+    
+    public String getStatsSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (TimedClassifier timed : classifiers) {
+            long runs = timed.runs.get();
+            summary.append(String.format("%s avg %.4fms (max %.3fms, %d tagged), ",
+                timed.classifier.getType().getLabel(), runs == 0 ? 0 : timed.nanos.get() / 1e6 / runs,
+                timed.maxNanos.get() / 1e6, timed.matches.get()));
+        }
+        return summary.append(skipped.get()).append(" too large to classify").toString();
+    }
+    
+    private static final class TimedClassifier {
+        final Classifier classifier;
+        final AtomicLong nanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLong runs = new AtomicLong();
+        final AtomicLong matches = new AtomicLong();
+        
+        TimedClassifier(Classifier classifier) {
+            this.classifier = classifier;
+        }
+        
+        void record(long elapsed, boolean matched) {
+            nanos.addAndGet(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+            runs.incrementAndGet();
+            if (matched) {
+                matches.incrementAndGet();
+            }
+        }
+    }
+    
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+    
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+    
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+    
+    /**
+     * scheme://anything-without-whitespace, or www.host...
+     */
+    private static final class UrlClassifier implements Classifier {
+        private static final int MAX_SCHEME_CHARS = 32;
+        
+        @Override
+        public ContentType getType() {
+            return ContentType.URL;
+        }
+        
+        @Override
+        public boolean matches(String content, int start, int end) {
+            int i = start;
+            if (content.regionMatches(true, start, "www.", 0, 4)) {
+                i += 4;
+            } else {
+                // Scheme: a letter, then letters, digits, + - or .
+                if (!isAsciiLetter(content.charAt(i))) {
+                    return false;
+                }
+                i++;
+                while (i < end && i - start <= MAX_SCHEME_CHARS) {
+                    char c = content.charAt(i);
+                    if (!isAsciiLetterOrDigit(c) && c != '+' && c != '-' && c != '.') {
+                        break;
+                    }
+                    i++;
+                }
+                if (!content.startsWith("://", i)) {
+                    return false;
+                }
+                i += 3;
+            }
+            if (i == end) {
+                return false;
+            }
+            for (; i < end; i++) {
+                char c = content.charAt(i);
+                if (Character.isWhitespace(c) || Character.isISOControl(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * One line starting /, ~/, ./, ../, C:\ or \\server
+     */
+    private static final class FilePathClassifier implements Classifier {
+        private static final int MAX_PATH_CHARS = 4096;
+        
+        @Override
+        public ContentType getType() {
+            return ContentType.FILE_PATH;
+        }
+        
+        @Override
+        public boolean matches(String content, int start, int end) {
+            int length = end - start;
+            if (length < 2 || length > MAX_PATH_CHARS) {
+                return false;
+            }
+            char first = content.charAt(start);
+            char second = content.charAt(start + 1);
+            boolean rooted;
+            if (first == '/') {
+                rooted = second != '/' && second != '*' && second != ' '; // Not a comment
+            } else if (first == '~' || first == '.') {
+                rooted = second == '/' || (first == '.' && content.startsWith("./", start + 1));
+            } else if (first == '\\') {
+                rooted = second == '\\';
+            } else {
+                rooted = isAsciiLetter(first) && second == ':' && length > 2 &&
+                         (content.charAt(start + 2) == '\\' || content.charAt(start + 2) == '/');
+            }
+            if (!rooted) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                char c = content.charAt(i);
+                if (c == '\n' || c == '\r' || c == '\t' || c == '<' || c == '>' || c == '|' ||
+                    c == '"' || c == '*' || c == '?' || Character.isISOControl(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * A JSON object or array, validated in one pass with an explicit bracket stack
+     */
+    private static final class JsonClassifier implements Classifier {
+        private static final int VALUE = 0;
+        private static final int VALUE_OR_CLOSE = 1; // Just after [
+        private static final int KEY = 2;
+        private static final int KEY_OR_CLOSE = 3; // Just after {
+        private static final int COLON = 4;
+        private static final int AFTER_VALUE = 5;
+        
+        @Override
+        public ContentType getType() {
+            return ContentType.JSON;
+        }
+        
+        @Override
+        public boolean matches(String content, int start, int end) {
+            char first = content.charAt(start);
+            char last = content.charAt(end - 1);
+            if (!((first == '{' && last == '}') || (first == '[' && last == ']'))) {
+                return false;
+            }
+            
+            char[] open = new char[16];
+            int depth = 0;
+            int state = VALUE;
+            int i = start;
+            while (i < end) {
+                char c = content.charAt(i);
+                if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                    i++;
+                    continue;
+                }
+                switch (state) {
+                    case VALUE_OR_CLOSE:
+                        if (c == ']') {
+                            depth--;
+                            state = AFTER_VALUE;
+                            i++;
+                        } else {
+                            state = VALUE; // Not empty - read c again as a value
+                        }
+                        continue;
+                    case VALUE:
+                        if (c == '{' || c == '[') {
+                            if (depth == open.length) {
+                                open = Arrays.copyOf(open, depth * 2);
+                            }
+                            open[depth++] = c;
+                            state = c == '{' ? KEY_OR_CLOSE : VALUE_OR_CLOSE;
+                            i++;
+                        } else {
+                            if (depth == 0) {
+                                return false; // Bare scalars aren't worth tagging
+                            }
+                            i = scanScalar(content, i, end);
+                            state = AFTER_VALUE;
+                        }
+                        break;
+                    case KEY_OR_CLOSE:
+                        if (c == '}') {
+                            depth--;
+                            state = AFTER_VALUE;
+                            i++;
+                        } else {
+                            state = KEY; // Not empty - read c again as a key
+                        }
+                        continue;
+                    case KEY:
+                        i = c == '"' ? scanString(content, i, end) : -1;
+                        state = COLON;
+                        break;
+                    case COLON:
+                        if (c != ':') {
+                            return false;
+                        }
+                        state = VALUE;
+                        i++;
+                        break;
+                    default: // AFTER_VALUE
+                        if (depth == 0) {
+                            return false; // Something after the top-level value
+                        }
+                        char container = open[depth - 1];
+                        if (c == ',') {
+                            state = container == '{' ? KEY : VALUE;
+                        } else if (c == (container == '{' ? '}' : ']')) {
+                            depth--;
+                        } else {
+                            return false;
+                        }
+                        i++;
+                        break;
+                }
+                if (i < 0) {
+                    return false;
+                }
+            }
+            return depth == 0 && state == AFTER_VALUE;
+        }
+        
+        /**
+         * @return the index just past a string, number or literal at i, or -1 if there isn't one
+         */
+        private static int scanScalar(String content, int i, int end) {
+            char c = content.charAt(i);
+            if (c == '"') {
+                return scanString(content, i, end);
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return scanNumber(content, i, end);
+            }
+            for (String literal : new String[] {"true", "false", "null"}) {
+                if (content.startsWith(literal, i)) {
+                    return i + literal.length();
+                }
+            }
+            return -1;
+        }
+        
+        private static int scanString(String content, int i, int end) {
+            for (i++; i < end; i++) {
+                char c = content.charAt(i);
+                if (c == '"') {
+                    return i + 1;
+                }
+                if (c < 0x20) {
+                    return -1;
+                }
+                if (c == '\\') {
+                    if (++i == end) {
+                        return -1;
+                    }
+                    char escaped = content.charAt(i);
+                    if (escaped == 'u') {
+                        if (i + 4 >= end) {
+                            return -1;
+                        }
+                        for (int h = 1; h <= 4; h++) {
+                            if (!isHexDigit(content.charAt(i + h))) {
+                                return -1;
+                            }
+                        }
+                        i += 4;
+                    } else if ("\"\\/bfnrt".indexOf(escaped) < 0) {
+                        return -1;
+                    }
+                }
+            }
+            return -1;
+        }
+        
+        private static int scanNumber(String content, int i, int end) {
+            if (content.charAt(i) == '-') {
+                i++;
+            }
+            int digits = skipDigits(content, i, end);
+            if (digits == i || (content.charAt(i) == '0' && digits > i + 1)) {
+                return -1; // No digits, or a leading zero
+            }
+            i = digits;
+            if (i < end && content.charAt(i) == '.') {
+                digits = skipDigits(content, i + 1, end);
+                if (digits == i + 1) {
+                    return -1;
+                }
+                i = digits;
+            }
+            if (i < end && (content.charAt(i) == 'e' || content.charAt(i) == 'E')) {
+                i++;
+                if (i < end && (content.charAt(i) == '+' || content.charAt(i) == '-')) {
+                    i++;
+                }
+                digits = skipDigits(content, i, end);
+                if (digits == i) {
+                    return -1;
+                }
+                i = digits;
+            }
+            return i;
+        }
+        
+        private static int skipDigits(String content, int i, int end) {
+            while (i < end && content.charAt(i) >= '0' && content.charAt(i) <= '9') {
+                i++;
+            }
+            return i;
+        }
+    }
+    
+    /**
+     * Source code, by line: at least two lines, and at least half of the
+     * non-blank ones, look like code (statement terminators, keywords at line
+     * start, comment markers, operators prose doesn't use). A single line
+     * counts if it's a statement ending in a semicolon. Only the first
+     * SCANNED_CHARS are looked at.
+     */
+    private static final class CodeClassifier implements Classifier {
+        private static final int SCANNED_CHARS = 64 * 1024;
+        private static final int MAX_KEYWORD_CHARS = 9;
+        private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "import", "package", "public", "private", "protected", "static", "class", "interface",
+            "def", "function", "return", "const", "let", "var", "if", "elif", "else", "for", "while",
+            "try", "catch", "switch", "case", "async", "await", "export", "from", "using", "namespace",
+            "fn", "func", "struct", "impl", "#include", "#define", "#import", "SELECT"));
+        
+        @Override
+        public ContentType getType() {
+            return ContentType.CODE;
+        }
+        
+        @Override
+        public boolean matches(String content, int start, int end) {
+            end = Math.min(end, start + SCANNED_CHARS);
+            int nonBlank = 0;
+            int codeLines = 0;
+            boolean statement = false; // Last code line was a statement ending in ;
+            int lineStart = start;
+            while (lineStart < end) {
+                int lineEnd = lineStart;
+                while (lineEnd < end && content.charAt(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int from = lineStart;
+                int to = lineEnd;
+                while (from < to && Character.isWhitespace(content.charAt(from))) {
+                    from++;
+                }
+                while (to > from && Character.isWhitespace(content.charAt(to - 1))) {
+                    to--;
+                }
+                if (from < to && !isBracketsOnly(content, from, to)) {
+                    nonBlank++;
+                    if (isCodeLine(content, from, to)) {
+                        codeLines++;
+                        char lastChar = content.charAt(to - 1);
+                        statement = lastChar == ';' &&
+                                    (content.lastIndexOf('(', to - 1) >= from || content.lastIndexOf('=', to - 1) >= from);
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            if (nonBlank == 1) {
+                return codeLines == 1 && statement;
+            }
+            return codeLines >= 2 && codeLines * 2 >= nonBlank;
+        }
+        
+        /**
+         * Lines like "}" or "});" are code but say nothing about prose vs code
+         */
+        private static boolean isBracketsOnly(String content, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if ("{}()[];,".indexOf(content.charAt(i)) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private static boolean isCodeLine(String content, int from, int to) {
+            char last = content.charAt(to - 1);
+            if (last == ';' || last == '{') {
+                return true;
+            }
+            if (content.startsWith("//", from) || content.startsWith("/*", from) ||
+                content.startsWith("* ", from) || content.startsWith("*/", from)) {
+                return true;
+            }
+            
+            // Keyword, then a space, ( or :
+            int word = content.charAt(from) == '#' ? from + 1 : from;
+            while (word < to && isAsciiLetter(content.charAt(word))) {
+                word++;
+            }
+            int length = word - from;
+            if (length > 0 && length <= MAX_KEYWORD_CHARS && word < to &&
+                " (:".indexOf(content.charAt(word)) >= 0 && KEYWORDS.contains(content.substring(from, word))) {
+                return true;
+            }
+            
+            for (int i = from; i + 1 < to; i++) {
+                if (isOperator(content.charAt(i), content.charAt(i + 1))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Two-char operators prose doesn't use: => -> :: == != && || := += ++
+         */
+        private static boolean isOperator(char first, char second) {
+            switch (first) {
+                case '=':
+                    return second == '>' || second == '=';
+                case '-':
+                    return second == '>';
+                case ':':
+                    return second == ':' || second == '=';
+                case '!':
+                    return second == '=';
+                case '&':
+                    return second == '&';
+                case '|':
+                    return second == '|';
+                case '+':
+                    return second == '=' || second == '+';
+                default:
+                    return false;
+            }
+        }
+    }
+    
+    /**
+     * #rgb, #rgba, #rrggbb or #rrggbbaa
+     */
+    private static final class HexColorClassifier implements Classifier {
+        @Override
+        public ContentType getType() {
+            return ContentType.HEX_COLOR;
+        }
+        
+        @Override
+        public boolean matches(String content, int start, int end) {
+            int digits = end - start - 1;
+            if (content.charAt(start) != '#' || (digits != 3 && digits != 4 && digits != 6 && digits != 8)) {
+                return false;
+            }
+            for (int i = start + 1; i < end; i++) {
+                if (!isHexDigit(content.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * local@domain.tld, optionally prefixed with mailto:
+     */
+    private static final class EmailClassifier implements Classifier {
+        private static final String LOCAL_SYMBOLS = ".!#$%&'*+/=?^_`{|}~-";
+        private static final int MAX_EMAIL_CHARS = 320;
+        
+        @Override
+        public ContentType getType() {
+            return ContentType.EMAIL;
+        }
+        
+        @Override
+        public boolean matches(String content, int start, int end) {
+            if (content.regionMatches(true, start, "mailto:", 0, 7)) {
+                start += 7;
+            }
+            if (end - start > MAX_EMAIL_CHARS) {
+                return false;
+            }
+            
+            int i = start;
+            while (i < end && content.charAt(i) != '@') {
+                char c = content.charAt(i);
+                if (!isAsciiLetterOrDigit(c) && LOCAL_SYMBOLS.indexOf(c) < 0) {
+                    return false;
+                }
+                i++;
+            }
+            if (i == start || i == end || content.charAt(start) == '.' || content.charAt(i - 1) == '.') {
+                return false;
+            }
+            
+            // Domain: dot-separated labels of letters, digits and hyphens; the last is 2+ letters
+            int labels = 0;
+            int labelStart = i + 1;
+            boolean lettersOnly = true;
+            for (i = labelStart; i <= end; i++) {
+                char c = i < end ? content.charAt(i) : '.';
+                if (c == '.') {
+                    if (i == labelStart) {
+                        return false; // Empty label
+                    }
+                    labels++;
+                    if (i == end) {
+                        return labels >= 2 && lettersOnly && i - labelStart >= 2;
+                    }
+                    labelStart = i + 1;
+                    lettersOnly = true;
+                } else if (isAsciiLetterOrDigit(c) || c == '-') {
+                    lettersOnly &= isAsciiLetter(c);
+                } else {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Kinds of text the ContentClassifier recognizes. An entry can be several at
+ * once (a JSON snippet may also look like code); EntryMetadata keeps them as
+ * a bitmask of bit() values.
+ */
+public enum ContentType {
+    URL("URL"),
+    FILE_PATH("Path"),
+    JSON("JSON"),
+    CODE("Code"),
+    HEX_COLOR("Color"),
+    EMAIL("Email");
+    
+    private final String label;
+    
+    ContentType(String label) {
+        this.label = label;
+    }
+    
+    /**
+     * Short name for filter chips
+     */
+    public String getLabel() {
+        return label;
+    }
+    
+    /**
+     * This type's bit in a content type mask
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+    
+    public boolean isIn(int mask) {
+        return (mask & bit()) != 0;
+    }
+}
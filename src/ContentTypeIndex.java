@@ -0,0 +1,139 @@
+import java.util.BitSet;
+
+/**
+ * One bitset per ContentType over history entries, so a type filter is a few
+ * word-wide ORs and ANDs instead of a check of every entry's metadata.
+ *
+ * Bits are the entries' TrigramIndex ids: ClipboardMonitor's writer adds an
+ * entry here right after the trigram index gives it an id, and removes it
+ * before the id is released. Ids are reused, so the bitsets stay about as long
+ * as the history; a selection only vouches for entries indexed before it was
+ * made. Synchronized: the writer updates it while the search thread reads.
+ */
+public class ContentTypeIndex {
+    private static final ContentType[] TYPES = ContentType.values();
+    
+    private final BitSet[] bits = new BitSet[TYPES.length];
+    private final int[] counts = new int[TYPES.length];
+    private long indexedBefore = 0; // Past the newest TrigramIndex sequence number added
+    
+    // Statistics
+    private long selections = 0;
+    private long selectionNanos = 0;
+    
+    public ContentTypeIndex() {
+        for (int t = 0; t < TYPES.length; t++) {
+            bits[t] = new BitSet();
+        }
+    }
+    
+    /**
+     * Sets an indexed, enriched entry's type bits (writer thread)
+     */
+    public synchronized void add(ClipboardMonitor.ClipboardEntry entry) {
+        update(entry, true);
+        indexedBefore = Math.max(indexedBefore, entry.getIndexSeq() + 1);
+    }
+    
+    /**
+     * Clears an entry's type bits before its id is released (writer thread)
+     */
+    public synchronized void remove(ClipboardMonitor.ClipboardEntry entry) {
+        update(entry, false);
+    }
+    
+    private void update(ClipboardMonitor.ClipboardEntry entry, boolean value) {
+        int id = entry.getIndexId();
+        EntryMetadata metadata = entry.getMetadata();
+        if (id < 0 || metadata == null) {
+            return;
+        }
+        for (int t = 0; t < TYPES.length; t++) {
+            if (TYPES[t].isIn(metadata.getContentTypes()) && bits[t].get(id) != value) {
+                bits[t].set(id, value);
+                counts[t] += value ? 1 : -1;
+            }
+        }
+    }
+    
+    public synchronized void clear() {
+        for (int t = 0; t < TYPES.length; t++) {
+            bits[t] = new BitSet();
+            counts[t] = 0;
+        }
+    }
+    
+    /**
+     * Entries of any of the given types, as of now
+     * @param types ContentType bits, at least one set
+     */
+    public synchronized Selection select(int types) {
+        long start = System.nanoTime();
+        BitSet selected = new BitSet();
+        for (int t = 0; t < TYPES.length; t++) {
+            if (TYPES[t].isIn(types)) {
+                selected.or(bits[t]);
+            }
+        }
+        selections++;
+        selectionNanos += System.nanoTime() - start;
+        return new Selection(selected, indexedBefore);
+    }
+    
+    /**
+     * How many entries are tagged with a type
+     */
+    public synchronized int getCount(ContentType type) {
+        return counts[type.ordinal()];
+    }
+    
+    public synchronized String getStatsSummary() {
+        StringBuilder summary = new StringBuilder();
+        long bytes = 0;
+        for (int t = 0; t < TYPES.length; t++) {
+            summary.append(TYPES[t].getLabel()).append(' ').append(counts[t]).append(", ");
+            bytes += bits[t].size() / 8;
+        }
+        return summary.append(String.format("~%d KB of bitsets, %d selections (avg %.3fms)",
+            bytes / 1024, selections, selections == 0 ? 0 : selectionNanos / 1e6 / selections)).toString();
+    }
+    
+    /**
+     * Snapshot of the entries of the selected types
+     */
+    public static final class Selection {
+        private final BitSet bits;
+        private final long indexedBefore;
+        
+        Selection(BitSet bits, long indexedBefore) {
+            this.bits = bits;
+            this.indexedBefore = indexedBefore;
+        }
+        
+        /**
+         * False for entries that weren't enriched and indexed when the selection was made
+         */
+        public boolean contains(ClipboardMonitor.ClipboardEntry entry) {
+            int id = entry.getIndexId();
+            return id >= 0 && entry.getIndexSeq() < indexedBefore && bits.get(id);
+        }
+        
+        /**
+         * The selected ids, for ANDing with other bitsets (don't modify)
+         */
+        BitSet getBits() {
+            return bits;
+        }
+        
+        /**
+         * TrigramIndex sequence number of the first entry indexed after the selection
+         */
+        long getIndexedBefore() {
+            return indexedBefore;
+        }
+        
+        public int size() {
+            return bits.cardinality();
+        }
+    }
+}
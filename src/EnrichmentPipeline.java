@@ -0,0 +1,185 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Derives an entry's EntryMetadata from its content in stages, on a small
+ * worker pool, so capture only does what dedup and the list need right away
+ * (fingerprint and preview).
+ *
+ * Workers only ever see the content String handed to submit, never the
+ * entry's payload, so eviction can free off-heap storage at any time.
+ * Each stage is timed separately.
+ */
+public class EnrichmentPipeline {
+    
+    /**
+     * One step of enrichment. Runs on a worker thread; must not keep the content.
+     */
+    public interface Stage {
+        String getName();
+        
+        void enrich(String content, EntryMetadata.Builder metadata);
+    }
+    
+    private final List<TimedStage> stages = new CopyOnWriteArrayList<>();
+    private final ExecutorService workers;
+    
+    // Statistics
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong enriched = new AtomicLong();
+    private final AtomicLong enrichedChars = new AtomicLong();
+    private final AtomicLong queueNanos = new AtomicLong();
+    
+    public EnrichmentPipeline(int threads) {
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "clipboard-enrichment");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        addStage(new SearchKeyStage());
+        addStage(new TextStatsStage());
+    }
+    
+    /**
+     * Appends a stage; it applies to entries submitted from now on
+     */
+    public void addStage(Stage stage) {
+        stages.add(new TimedStage(stage));
+    }
+    
+    /**
+     * Enriches an entry on a worker
+     * @param content the entry's content, already materialized
+     * @param done called on the worker with the result
+     */
+    public void submit(ClipboardMonitor.ClipboardEntry entry, String content,
+                       BiConsumer<ClipboardMonitor.ClipboardEntry, EntryMetadata> done) {
+        long submittedAt = System.nanoTime();
+        submitted.incrementAndGet();
+        workers.execute(() -> {
+            queueNanos.addAndGet(System.nanoTime() - submittedAt);
+            done.accept(entry, enrich(content));
+        });
+    }
+    
+    /**
+     * Runs every stage on the calling thread
+     */
+    public EntryMetadata enrich(String content) {
+        EntryMetadata.Builder metadata = new EntryMetadata.Builder();
+        for (TimedStage stage : stages) {
+            long start = System.nanoTime();
+            stage.stage.enrich(content, metadata);
+            stage.nanos.addAndGet(System.nanoTime() - start);
+            stage.runs.incrementAndGet();
+        }
+        enriched.incrementAndGet();
+        enrichedChars.addAndGet(content.length());
+        return metadata.build();
+    }
+    
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+    
+    public String getStatsSummary() {
+        long done = enriched.get();
+        StringBuilder summary = new StringBuilder(String.format(
+            "%d of %d entries enriched (%d KB), avg queue wait %.2fms",
+            done, submitted.get(), enrichedChars.get() / 1024,
+            done == 0 ? 0 : queueNanos.get() / 1e6 / done));
+        for (TimedStage stage : stages) {
+            long runs = stage.runs.get();
+            summary.append(String.format(", %s avg %.3fms", stage.stage.getName(),
+                runs == 0 ? 0 : stage.nanos.get() / 1e6 / runs));
+        }
+        return summary.toString();
+    }
+    
+    private static final class TimedStage {
+        final Stage stage;
+        final AtomicLong nanos = new AtomicLong();
+        final AtomicLong runs = new AtomicLong();
+        
+        TimedStage(Stage stage) {
+            this.stage = stage;
+        }
+    }
+    
+    /**
+     * Lowercased search key, for entries small enough to keep one
+     */
+    private static final class SearchKeyStage implements Stage {
+        @Override
+        public String getName() {
+            return "search key";
+        }
+        
+        @Override
+        public void enrich(String content, EntryMetadata.Builder metadata) {
+            metadata.setSearchKey(ClipboardMonitor.ClipboardEntry.buildSearchKey(content));
+        }
+    }
+    
+    /**
+     * UTF-8 size, line count and character classes in one pass
+     */
+    private static final class TextStatsStage implements Stage {
+        @Override
+        public String getName() {
+            return "text stats";
+        }
+        
+        @Override
+        public void enrich(String content, EntryMetadata.Builder metadata) {
+            long utf8Bytes = 0;
+            int newlines = 0;
+            int letters = 0;
+            int digits = 0;
+            int whitespace = 0;
+            int punctuation = 0;
+            int nonAscii = 0;
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                if (c < 0x80) {
+                    utf8Bytes++;
+                } else {
+                    nonAscii++;
+                    if (Character.isHighSurrogate(c) && i + 1 < content.length() &&
+                        Character.isLowSurrogate(content.charAt(i + 1))) {
+                        utf8Bytes += 4; // The pair is one code point
+                        if (Character.isLetter(content.codePointAt(i))) {
+                            letters++;
+                        } else {
+                            punctuation++; // Mostly emoji
+                        }
+                        i++;
+                        continue;
+                    }
+                    utf8Bytes += c < 0x800 ? 2 : 3;
+                }
+                if (c == '\n') {
+                    newlines++;
+                }
+                if (Character.isLetter(c)) {
+                    letters++;
+                } else if (Character.isDigit(c)) {
+                    digits++;
+                } else if (Character.isWhitespace(c)) {
+                    whitespace++;
+                } else {
+                    punctuation++;
+                }
+            }
+            // A trailing newline ends the last line rather than starting another
+            boolean unterminated = !content.isEmpty() && content.charAt(content.length() - 1) != '\n';
+            metadata.setUtf8Bytes(utf8Bytes).setLineCount(newlines + (unterminated ? 1 : 0))
+                    .setCharClasses(letters, digits, whitespace, punctuation, nonAscii);
+        }
+    }
+}
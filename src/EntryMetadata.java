@@ -0,0 +1,129 @@
+/**
+ * Facts derived from an entry's content by the EnrichmentPipeline. Computed
+ * once per entry, off the writer thread, and never changed afterwards; copies
+ * of an entry (moved to front, re-copied) share it.
+ */
+public final class EntryMetadata {
+    private final String searchKey;
+    private final long utf8Bytes;
+    private final int lineCount;
+    private final int letters;
+    private final int digits;
+    private final int whitespace;
+    private final int punctuation;
+    private final int nonAscii;
+    private final int contentTypes;
+    
+    private EntryMetadata(Builder builder) {
+        this.searchKey = builder.searchKey;
+        this.utf8Bytes = builder.utf8Bytes;
+        this.lineCount = builder.lineCount;
+        this.letters = builder.letters;
+        this.digits = builder.digits;
+        this.whitespace = builder.whitespace;
+        this.punctuation = builder.punctuation;
+        this.nonAscii = builder.nonAscii;
+        this.contentTypes = builder.contentTypes;
+    }
+    
+    /**
+     * Lowercased content for substring search, or null if the entry is too
+     * large to keep a second copy of (search scans its content)
+     */
+    public String getSearchKey() {
+        return searchKey;
+    }
+    
+    /**
+     * Size of the content encoded as UTF-8
+     */
+    public long getUtf8Bytes() {
+        return utf8Bytes;
+    }
+    
+    public int getLineCount() {
+        return lineCount;
+    }
+    
+    public int getLetters() {
+        return letters;
+    }
+    
+    public int getDigits() {
+        return digits;
+    }
+    
+    public int getWhitespace() {
+        return whitespace;
+    }
+    
+    /**
+     * Punctuation and symbols: anything that isn't a letter, digit or whitespace
+     */
+    public int getPunctuation() {
+        return punctuation;
+    }
+    
+    public int getNonAscii() {
+        return nonAscii;
+    }
+    
+    /**
+     * ContentType bits the ContentClassifier tagged the entry with
+     */
+    public int getContentTypes() {
+        return contentTypes;
+    }
+    
+    public boolean hasType(ContentType type) {
+        return type.isIn(contentTypes);
+    }
+    
+    /**
+     * Filled in by the pipeline's stages, then frozen with build()
+     */
+    public static final class Builder {
+        private String searchKey;
+        private long utf8Bytes;
+        private int lineCount;
+        private int letters;
+        private int digits;
+        private int whitespace;
+        private int punctuation;
+        private int nonAscii;
+        private int contentTypes;
+        
+        public Builder setSearchKey(String searchKey) {
+            this.searchKey = searchKey;
+            return this;
+        }
+        
+        public Builder setUtf8Bytes(long utf8Bytes) {
+            this.utf8Bytes = utf8Bytes;
+            return this;
+        }
+        
+        public Builder setLineCount(int lineCount) {
+            this.lineCount = lineCount;
+            return this;
+        }
+        
+        public Builder setCharClasses(int letters, int digits, int whitespace, int punctuation, int nonAscii) {
+            this.letters = letters;
+            this.digits = digits;
+            this.whitespace = whitespace;
+            this.punctuation = punctuation;
+            this.nonAscii = nonAscii;
+            return this;
+        }
+        
+        public Builder setContentTypes(int contentTypes) {
+            this.contentTypes = contentTypes;
+            return this;
+        }
+        
+        public EntryMetadata build() {
+            return new EntryMetadata(this);
+        }
+    }
+}
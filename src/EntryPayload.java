@@ -0,0 +1,64 @@
+import java.util.function.Consumer;
+
+/**
+ * Storage for the full content of a clipboard entry.
+ * Lets large payloads live somewhere other than an on-heap String
+ * (see OffHeapArena) while ClipboardEntry keeps only metadata on-heap.
+ */
+public interface EntryPayload {
+    
+    /**
+     * Materializes the full content. Returns an empty string once released.
+     */
+    String getContent();
+    
+    /**
+     * Length of the content in chars (no materialization)
+     */
+    int length();
+    
+    /**
+     * Approximate Java heap retained by this payload
+     */
+    long getHeapBytes();
+    
+    /**
+     * Bytes held outside the Java heap
+     */
+    long getOffHeapBytes();
+    
+    /**
+     * Whether the compression tier may replace this payload with a compressed copy
+     */
+    default boolean isCompressible() {
+        return true;
+    }
+    
+    /**
+     * Whether the content lives in the ColdTier rather than the in-memory history
+     */
+    default boolean isCold() {
+        return false;
+    }
+    
+    /**
+     * Whether releasing this payload can shift storage onto other payloads,
+     * whose accounted sizes then have to be re-read (see release(Consumer))
+     */
+    default boolean sharesStorage() {
+        return false;
+    }
+    
+    /**
+     * Frees any storage held outside the heap. Called once the entry has left the history.
+     */
+    void release();
+    
+    /**
+     * Same as release(), also passing heirs each payload that took over storage
+     * this one was charged for, once per payload
+     */
+    default void release(Consumer<EntryPayload> heirs) {
+        release();
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Decides which history entry to drop when ClipboardHistory is over its
+ * entry-count or byte budget.
+ */
+public interface EvictionPolicy {
+    
+    /**
+     * Picks the slot to evict.
+     * @param leastRecentFirst candidate slots, least recently used first; never empty.
+     *                         The most recent entry is never a candidate.
+     */
+    ClipboardHistory.Slot selectVictim(Iterable<ClipboardHistory.Slot> leastRecentFirst);
+    
+    /**
+     * Least recently copied or pasted entry goes first (O(1))
+     */
+    EvictionPolicy LRU = candidates -> candidates.iterator().next();
+    
+    /**
+     * Entry that first entered the history earliest goes first, even if it
+     * has been re-copied since
+     */
+    EvictionPolicy OLDEST_FIRST = candidates -> {
+        ClipboardHistory.Slot victim = null;
+        for (ClipboardHistory.Slot slot : candidates) {
+            if (victim == null || slot.getFirstCapturedAt() < victim.getFirstCapturedAt()) {
+                victim = slot;
+            }
+        }
+        return victim;
+    };
+    
+    /**
+     * Big, stale entries go first: scores each entry by accounted bytes times
+     * its recency rank, so one 50 MB paste is dropped before many small words
+     */
+    EvictionPolicy SIZE_WEIGHTED = candidates -> {
+        ClipboardHistory.Slot victim = null;
+        double bestScore = -1;
+        int rank = 0;
+        int count = 0;
+        for (ClipboardHistory.Slot ignored : candidates) {
+            count++;
+        }
+        for (ClipboardHistory.Slot slot : candidates) {
+            // Least recent candidate has the highest age weight
+            double score = (double) slot.getAccountedBytes() * (count - rank);
+            if (score > bestScore) {
+                bestScore = score;
+                victim = slot;
+            }
+            rank++;
+        }
+        return victim;
+    };
+}
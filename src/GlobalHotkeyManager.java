@@ -6,19 +6,26 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.awt.Toolkit;
 import java.awt.datatransfer.StringSelection;
+import java.util.function.Supplier;
 
 public class GlobalHotkeyManager implements NativeKeyListener {
-    private ClipboardHistoryGUI gui;
+    private final ClipboardMonitor monitor;
+    private final Supplier<ClipboardHistoryGUI> gui; // Built on first use
     private boolean cmdPressed = false;
     private boolean shiftPressed = false;
     private long lastHotkeyTime = 0;
     private String originalClipboard = "";
     
-    public GlobalHotkeyManager(ClipboardHistoryGUI gui) {
+    public GlobalHotkeyManager(ClipboardMonitor monitor, Supplier<ClipboardHistoryGUI> gui) {
+        this.monitor = monitor;
         this.gui = gui;
     }
     
-    public void initialize() {
+    /**
+     * Registers the native hook
+     * @return false if it couldn't be registered (the user is told how to fix it)
+     */
+    public boolean initialize() {
         try {
             // Disable JNativeHook logging to reduce console spam
             Logger logger = Logger.getLogger(GlobalScreen.class.getPackage().getName());
@@ -30,6 +37,7 @@ public class GlobalHotkeyManager implements NativeKeyListener {
             GlobalScreen.addNativeKeyListener(this);
             
             System.out.println("Global hotkey registered: Cmd+Shift+V (GUI only - preventing auto-paste)");
+            return true;
             
         } catch (NativeHookException ex) {
             System.err.println("There was a problem registering the native hook.");
@@ -51,6 +59,7 @@ public class GlobalHotkeyManager implements NativeKeyListener {
                     );
                 }
             });
+            return false;
         }
     }
     
@@ -69,6 +78,9 @@ public class GlobalHotkeyManager implements NativeKeyListener {
         // Track modifier keys
         if (e.getKeyCode() == NativeKeyEvent.VC_META) {  // Cmd key on Mac
             cmdPressed = true;
+            
+            // A copy is likely coming - let the monitor poll faster for a while
+            monitor.noteUserActivity();
         }
         if (e.getKeyCode() == NativeKeyEvent.VC_SHIFT) {
             shiftPressed = true;
@@ -76,6 +88,7 @@ public class GlobalHotkeyManager implements NativeKeyListener {
         
         // Check for Cmd+Shift+V combination
         if (cmdPressed && shiftPressed && e.getKeyCode() == NativeKeyEvent.VC_V) {
+            long pressedAt = System.nanoTime(); // For hotkey-to-paint latency
             long currentTime = System.currentTimeMillis();
             
             // Prevent multiple rapid triggers (debounce)
@@ -90,7 +103,7 @@ public class GlobalHotkeyManager implements NativeKeyListener {
                 // Show GUI after preventing paste
                 javax.swing.SwingUtilities.invokeLater(new Runnable() {
                     public void run() {
-                        gui.showHistory();
+                        gui.get().showHistory(pressedAt);
                     }
                 });
             }
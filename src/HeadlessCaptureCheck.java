@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/**
+ * Drives ClipboardMonitor through an InMemoryClipboardSource and checks what it
+ * captures, so the capture path can be exercised without a display (e.g. on Linux CI).
+ *
+ * Usage:
+ *   java -Djava.awt.headless=true -cp bin HeadlessCaptureCheck
+ *
+ * Exits with status 1 if any check fails.
+ */
+public class HeadlessCaptureCheck {
+    private static final long TIMEOUT_MS = 5000;
+    
+    public static void main(String[] args) throws Exception {
+        InMemoryClipboardSource source = new InMemoryClipboardSource();
+        ClipboardMonitor monitor = new ClipboardMonitor(source);
+        int failures = 0;
+        DeltaReplay replay = new DeltaReplay();
+        monitor.addHistoryListener(replay);
+        try {
+            monitor.setColdTier(true, 100, 60_000);
+            monitor.startMonitoring();
+            
+            source.copy("first");
+            failures += check("push capture", monitor, entries -> contentsAre(entries, "first"));
+            
+            source.copy("second");
+            failures += check("newest first", monitor, entries -> contentsAre(entries, "second", "first"));
+            
+            source.copy("first");
+            failures += check("duplicate moved to front", monitor,
+                entries -> contentsAre(entries, "first", "second"));
+            
+            source.copy("   ");
+            source.copy("third");
+            failures += check("blank copy skipped", monitor,
+                entries -> contentsAre(entries, "third", "first", "second"));
+            
+            failures += check("source stays push-only", monitor, entries -> source.isPushActive());
+            
+            monitor.setHistoryLimits(2, Long.MAX_VALUE);
+            failures += check("oldest evicted past the limit", monitor,
+                entries -> contentsAre(entries, "third", "first"));
+            failures += check("evicted entry kept cold", monitor, entries -> coldEntries(monitor) == 1);
+            
+            monitor.setColdTier(true, 50, 60_000);
+            failures += check("cold entries kept when limits change", monitor, entries -> coldEntries(monitor) == 1);
+            
+            monitor.clearHistory(null);
+            failures += check("history cleared", monitor, List::isEmpty);
+            
+            failures += check("deltas replay to every snapshot", monitor,
+                entries -> replay.mismatches.get() == 0 && replay.model.getSize() == 0);
+        } finally {
+            monitor.shutdown();
+        }
+        
+        System.out.println(failures == 0 ? "All headless capture checks passed"
+                                         : failures + " headless capture check(s) failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Waits for the published history to satisfy the condition
+     * @return 1 if it didn't within TIMEOUT_MS, 0 otherwise
+     */
+    private static int check(String name, ClipboardMonitor monitor,
+                             Predicate<List<ClipboardMonitor.ClipboardEntry>> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.test(monitor.getHistory())) {
+            if (System.currentTimeMillis() > deadline) {
+                System.out.println("FAIL " + name + ": history is " + describe(monitor.getHistory()));
+                return 1;
+            }
+            Thread.sleep(10);
+        }
+        System.out.println("ok   " + name);
+        return 0;
+    }
+    
+    /**
+     * Applies each batch of deltas to a HistoryListModel, as the history window
+     * does, and counts batches that don't lead to the snapshot they came with.
+     * A mirror built only from the model's list events checks that each event
+     * describes the model as it is when the event is fired.
+     */
+    private static final class DeltaReplay implements HistoryListener, ListDataListener {
+        final AtomicInteger mismatches = new AtomicInteger();
+        final HistoryListModel model = new HistoryListModel();
+        private final List<ClipboardMonitor.ClipboardEntry> mirror = new ArrayList<>();
+        
+        DeltaReplay() {
+            model.addListDataListener(this);
+        }
+        
+        @Override
+        public void historyChanged(List<HistoryEvent> events, HistorySnapshot snapshot) {
+            if (!model.apply(events, snapshot.getEntries()) || !sameEntries(mirror, snapshot.getEntries())) {
+                System.out.println("FAIL deltas " + events + " don't lead to " + describe(snapshot.getEntries()));
+                mismatches.incrementAndGet();
+                mirror.clear();
+                for (int i = 0; i < model.getSize(); i++) {
+                    mirror.add(model.getElementAt(i));
+                }
+            }
+        }
+        
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                mirror.add(i, model.getElementAt(i));
+            }
+        }
+        
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            for (int i = e.getIndex1(); i >= e.getIndex0(); i--) {
+                mirror.remove(i);
+            }
+        }
+        
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            for (int i = e.getIndex0(); i <= e.getIndex1() && i < mirror.size(); i++) {
+                mirror.set(i, model.getElementAt(i));
+            }
+        }
+    }
+    
+    private static boolean sameEntries(List<ClipboardMonitor.ClipboardEntry> a, List<ClipboardMonitor.ClipboardEntry> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int coldEntries(ClipboardMonitor monitor) {
+        ColdTier.View cold = monitor.getSnapshot().getColdView();
+        return cold == null ? 0 : cold.getLiveCount();
+    }
+    
+    private static boolean contentsAre(List<ClipboardMonitor.ClipboardEntry> entries, String... expected) {
+        if (entries.size() != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (!expected[i].equals(entries.get(i).getContent())) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static String describe(List<ClipboardMonitor.ClipboardEntry> entries) {
+        StringBuilder description = new StringBuilder("[");
+        for (ClipboardMonitor.ClipboardEntry entry : entries) {
+            if (description.length() > 1) {
+                description.append(", ");
+            }
+            description.append('"').append(entry.getPreview()).append('"');
+        }
+        return description.append(']').toString();
+    }
+}
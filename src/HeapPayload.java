@@ -0,0 +1,50 @@
+/**
+ * EntryPayload that simply holds the content as a String
+ */
+public class HeapPayload implements EntryPayload {
+    private final String content;
+    private final long heapBytes;
+    
+    public HeapPayload(String content) {
+        this.content = content;
+        this.heapBytes = estimateRetainedBytes(content);
+    }
+    
+    @Override
+    public String getContent() {
+        return content;
+    }
+    
+    @Override
+    public int length() {
+        return content.length();
+    }
+    
+    @Override
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+    
+    @Override
+    public long getOffHeapBytes() {
+        return 0;
+    }
+    
+    @Override
+    public void release() {
+        // Nothing to free - the GC takes care of it
+    }
+    
+    /**
+     * String header plus the backing array; compact strings use one
+     * byte per char when every char fits in Latin-1
+     */
+    static long estimateRetainedBytes(String content) {
+        boolean latin1 = true;
+        for (int i = 0; i < content.length() && latin1; i++) {
+            latin1 = content.charAt(i) < 256;
+        }
+        long arrayBytes = latin1 ? content.length() : 2L * content.length();
+        return 40 + arrayBytes;
+    }
+}
@@ -0,0 +1,312 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-256-GCM encryption for the persisted history log.
+ *
+ * The master secret lives in the macOS Keychain (elsewhere in an owner-only
+ * key file next to the log) and is read once per session; the log key is
+ * derived from it with HMAC-SHA256 and the master bytes are wiped right away.
+ * destroy() wipes this class's copy of the derived key and makes later calls
+ * fail when persistence is turned off or the app exits; the copies the JCE
+ * provider makes for each Cipher.init are only reclaimed by the GC.
+ *
+ * Each thread keeps one Cipher instance and re-inits it per record with a
+ * fresh nonce, instead of looking up a provider for every call. Nonces are a
+ * random per-segment prefix plus the record's offset, so they never repeat
+ * under the same key.
+ */
+public class HistoryCipher {
+    public static final int NONCE_BYTES = 12;
+    public static final int TAG_BYTES = 16;
+    
+    private static final String KEYCHAIN_SERVICE = "Clipboard Manager";
+    private static final String KEYCHAIN_ACCOUNT = "history-log-key";
+    private static final byte[] KEY_CONTEXT = "clipboard-history-log/v2".getBytes(StandardCharsets.US_ASCII);
+    private static final int KEY_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    
+    private final SessionKey key;
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM is not available", e);
+        }
+    });
+    
+    // Statistics
+    private final AtomicLong encryptions = new AtomicLong();
+    private final AtomicLong decryptions = new AtomicLong();
+    private final AtomicLong encryptedBytes = new AtomicLong();
+    private final AtomicLong decryptedBytes = new AtomicLong();
+    private final AtomicLong encryptNanos = new AtomicLong();
+    private final AtomicLong decryptNanos = new AtomicLong();
+    private final long keyDerivationNanos;
+    
+    private HistoryCipher(byte[] master, long keyDerivationStart) throws GeneralSecurityException {
+        try {
+            Mac hmac = Mac.getInstance("HmacSHA256");
+            hmac.init(new SecretKeySpec(master, "HmacSHA256"));
+            this.key = new SessionKey(hmac.doFinal(KEY_CONTEXT));
+        } finally {
+            Arrays.fill(master, (byte) 0);
+        }
+        this.keyDerivationNanos = System.nanoTime() - keyDerivationStart;
+    }
+    
+    /**
+     * Loads (or creates on first use) the master secret for a log and derives this session's key
+     */
+    public static HistoryCipher forLog(Path logFile) throws IOException {
+        long start = System.nanoTime();
+        byte[] master = null;
+        if (System.getProperty("os.name").toLowerCase().contains("mac")) {
+            master = loadFromKeychain();
+        }
+        if (master == null) {
+            master = loadFromKeyFile(logFile.resolveSibling(logFile.getFileName() + ".key"));
+        }
+        try {
+            return new HistoryCipher(master, start);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not derive the history key: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Reads the master secret from the login keychain, adding one if there is none.
+     * Returns null if the keychain can't be used.
+     */
+    private static byte[] loadFromKeychain() {
+        try {
+            String hex = runSecurity(null, "find-generic-password", "-s", KEYCHAIN_SERVICE,
+                                     "-a", KEYCHAIN_ACCOUNT, "-w");
+            if (hex != null && hex.length() == KEY_BYTES * 2) {
+                return fromHex(hex);
+            }
+            
+            byte[] master = new byte[KEY_BYTES];
+            RANDOM.nextBytes(master);
+            // A bare -w last makes `security` prompt for the password (twice) on stdin,
+            // so the secret never shows up in the process list
+            byte[] prompts = new byte[(KEY_BYTES * 2 + 1) * 2];
+            byte[] hexMaster = toHex(master);
+            for (int copy = 0; copy < 2; copy++) {
+                System.arraycopy(hexMaster, 0, prompts, copy * (hexMaster.length + 1), hexMaster.length);
+                prompts[copy * (hexMaster.length + 1) + hexMaster.length] = '\n';
+            }
+            Arrays.fill(hexMaster, (byte) 0);
+            try {
+                if (runSecurity(prompts, "add-generic-password", "-U", "-s", KEYCHAIN_SERVICE,
+                                "-a", KEYCHAIN_ACCOUNT, "-w") == null) {
+                    Arrays.fill(master, (byte) 0);
+                    return null;
+                }
+            } finally {
+                Arrays.fill(prompts, (byte) 0);
+            }
+            return master;
+        } catch (IOException e) {
+            System.err.println("Keychain unavailable, using a key file: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Runs the macOS security tool
+     * @param input written to its stdin, or null
+     * @return its trimmed output, or null if it failed
+     */
+    private static String runSecurity(byte[] input, String... args) throws IOException {
+        String[] command = new String[args.length + 1];
+        command[0] = "/usr/bin/security";
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process process = new ProcessBuilder(command).redirectErrorStream(false).start();
+        try (OutputStream stdin = process.getOutputStream()) {
+            if (input != null) {
+                stdin.write(input);
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            in.transferTo(output);
+        }
+        try {
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroy();
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return process.exitValue() == 0 ? output.toString(StandardCharsets.US_ASCII).trim() : null;
+    }
+    
+    private static byte[] loadFromKeyFile(Path keyFile) throws IOException {
+        if (Files.exists(keyFile)) {
+            byte[] master = Files.readAllBytes(keyFile);
+            if (master.length == KEY_BYTES) {
+                return master;
+            }
+            System.err.println("Ignoring malformed history key file " + keyFile);
+        }
+        
+        byte[] master = new byte[KEY_BYTES];
+        RANDOM.nextBytes(master);
+        Files.createDirectories(keyFile.getParent());
+        Files.write(keyFile, master, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        try {
+            Files.setPosixFilePermissions(keyFile, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+        }
+        return master;
+    }
+    
+    /**
+     * Fresh random nonce prefix for a new segment
+     */
+    public static long newNoncePrefix() {
+        return RANDOM.nextLong();
+    }
+    
+    public static byte[] nonce(long prefix, int counter) {
+        return ByteBuffer.allocate(NONCE_BYTES).putLong(prefix).putInt(counter).array();
+    }
+    
+    /**
+     * Encrypts plain into out (plain.remaining() + TAG_BYTES bytes)
+     */
+    public void encrypt(byte[] nonce, ByteBuffer plain, ByteBuffer out) {
+        long start = System.nanoTime();
+        int length = plain.remaining();
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+            cipher.doFinal(plain, out);
+        } catch (GeneralSecurityException e) {
+            // Only fails on a broken JCE setup or a destroyed key
+            throw new IllegalStateException("History encryption failed", e);
+        }
+        encryptions.incrementAndGet();
+        encryptedBytes.addAndGet(length);
+        encryptNanos.addAndGet(System.nanoTime() - start);
+    }
+    
+    /**
+     * Decrypts and authenticates sealed data
+     * @throws GeneralSecurityException if it was tampered with, torn, or written under another key
+     */
+    public byte[] decrypt(byte[] nonce, ByteBuffer sealed) throws GeneralSecurityException {
+        long start = System.nanoTime();
+        Cipher cipher = ciphers.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+        byte[] plain = new byte[Math.max(0, sealed.remaining() - TAG_BYTES)];
+        cipher.doFinal(sealed, ByteBuffer.wrap(plain));
+        decryptions.incrementAndGet();
+        decryptedBytes.addAndGet(plain.length);
+        decryptNanos.addAndGet(System.nanoTime() - start);
+        return plain;
+    }
+    
+    /**
+     * Wipes this class's copy of the session key. Later encrypt/decrypt calls fail.
+     */
+    public void destroy() {
+        key.destroy();
+    }
+    
+    public String getStatsSummary() {
+        return String.format("key derived in %.1fms, %d encryptions (%d KB, %.2fms total), " +
+                             "%d decryptions (%d KB, %.2fms total)",
+            keyDerivationNanos / 1e6,
+            encryptions.get(), encryptedBytes.get() / 1024, encryptNanos.get() / 1e6,
+            decryptions.get(), decryptedBytes.get() / 1024, decryptNanos.get() / 1e6);
+    }
+    
+    /**
+     * ASCII hex, as bytes so it can be wiped
+     */
+    private static byte[] toHex(byte[] bytes) {
+        byte[] hex = new byte[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = (byte) Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = (byte) Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return hex;
+    }
+    
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+    
+    /**
+     * The derived key, refusing use once destroyed. getEncoded() hands each
+     * Cipher.init a copy, and providers keep their own expanded key; neither
+     * can be wiped from here, they go away with the Cipher instances.
+     */
+    private static final class SessionKey implements SecretKey {
+        private static final long serialVersionUID = 1L;
+        
+        private final byte[] bytes;
+        private volatile boolean destroyed = false;
+        
+        SessionKey(byte[] bytes) {
+            this.bytes = bytes;
+        }
+        
+        @Override
+        public String getAlgorithm() {
+            return "AES";
+        }
+        
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+        
+        @Override
+        public byte[] getEncoded() {
+            if (destroyed) {
+                throw new IllegalStateException("History key was destroyed");
+            }
+            return bytes.clone();
+        }
+        
+        @Override
+        public void destroy() {
+            destroyed = true;
+            Arrays.fill(bytes, (byte) 0);
+        }
+        
+        @Override
+        public boolean isDestroyed() {
+            return destroyed;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * A single change to the clipboard history, published by ClipboardMonitor
+ * so views can update incrementally instead of reloading everything.
+ *
+ * Events name the entries involved, not their positions: the writer doesn't
+ * track positions, so recording a change stays O(1). A view replaying the
+ * events in order finds the rows in its own copy of the previous list (see
+ * HistoryListModel.apply).
+ */
+public final class HistoryEvent {
+    
+    public enum Type {
+        INSERTED,       // New entry at the front
+        MOVED_TO_FRONT, // Existing content re-copied: 'previous' left its row, 'entry' is now at the front
+        EVICTED,        // Entry removed
+        RESTORED,       // Entry from the persistent log appended at the oldest end
+        UPDATED,        // Entry enriched in place
+        CLEARED         // Everything removed
+    }
+    
+    private final Type type;
+    private final ClipboardMonitor.ClipboardEntry entry;
+    private final ClipboardMonitor.ClipboardEntry previous;
+    private final long version;
+    
+    HistoryEvent(Type type, ClipboardMonitor.ClipboardEntry entry,
+                 ClipboardMonitor.ClipboardEntry previous, long version) {
+        this.type = type;
+        this.entry = entry;
+        this.previous = previous;
+        this.version = version;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    /**
+     * The affected entry (null for CLEARED)
+     */
+    public ClipboardMonitor.ClipboardEntry getEntry() {
+        return entry;
+    }
+    
+    /**
+     * For MOVED_TO_FRONT, the entry object that was replaced; otherwise null
+     */
+    public ClipboardMonitor.ClipboardEntry getPrevious() {
+        return previous;
+    }
+    
+    /**
+     * Snapshot version this event belongs to
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    @Override
+    public String toString() {
+        return type + " v" + version;
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.AbstractListModel;
+
+/**
+ * List model that views an immutable list - a history snapshot's entries or a
+ * search's results - instead of copying it element by element.
+ *
+ * Each update either swaps the viewed list and fires one contentsChanged event
+ * over the union of the old and new ranges, or replays the history deltas that
+ * led to the new list, firing one event per delta. With fixed cell heights the
+ * JList then only lays out and paints the rows in view, however long the
+ * history is. EDT only.
+ */
+public class HistoryListModel extends AbstractListModel<ClipboardMonitor.ClipboardEntry> {
+    private static final long serialVersionUID = 1L;
+    
+    private List<ClipboardMonitor.ClipboardEntry> entries = Collections.emptyList();
+    
+    /**
+     * Shows a list the caller won't modify afterwards
+     */
+    public void show(List<ClipboardMonitor.ClipboardEntry> newEntries) {
+        if (newEntries == entries) {
+            return;
+        }
+        int changed = Math.max(entries.size(), newEntries.size());
+        entries = newEntries;
+        if (changed > 0) {
+            fireContentsChanged(this, 0, changed - 1);
+        }
+    }
+    
+    /**
+     * Shows a newer version of the list by applying its deltas one at a time to
+     * a copy of the current one, firing each delta's event right after it is
+     * applied, so the selection follows its entry and untouched rows aren't
+     * repainted. Rows are found by identity here rather than tracked by the writer.
+     * @return false if the deltas didn't lead from the current list to the new
+     *         one, which was then shown with show() instead
+     */
+    public boolean apply(List<HistoryEvent> events, List<ClipboardMonitor.ClipboardEntry> newEntries) {
+        entries = new ArrayList<>(entries);
+        for (HistoryEvent event : events) {
+            if (!step(event)) {
+                show(newEntries);
+                return false;
+            }
+        }
+        if (!sameEntries(newEntries)) {
+            show(newEntries);
+            return false;
+        }
+        entries = newEntries; // Same rows, no event needed
+        return true;
+    }
+    
+    /**
+     * Applies one delta to the working list and fires its event
+     * @return false if the rows it names aren't there
+     */
+    private boolean step(HistoryEvent event) {
+        switch (event.getType()) {
+            case INSERTED:
+                entries.add(0, event.getEntry());
+                fireIntervalAdded(this, 0, 0);
+                return true;
+            case MOVED_TO_FRONT: {
+                int from = indexOf(event.getPrevious());
+                if (from < 0) {
+                    return false;
+                }
+                if (from == 0) {
+                    entries.set(0, event.getEntry());
+                    fireContentsChanged(this, 0, 0);
+                } else {
+                    entries.remove(from);
+                    fireIntervalRemoved(this, from, from);
+                    entries.add(0, event.getEntry());
+                    fireIntervalAdded(this, 0, 0);
+                }
+                return true;
+            }
+            case EVICTED: {
+                int index = lastIndexOf(event.getEntry()); // Usually the oldest
+                if (index < 0) {
+                    return false;
+                }
+                entries.remove(index);
+                fireIntervalRemoved(this, index, index);
+                return true;
+            }
+            case RESTORED: {
+                int index = entries.size();
+                entries.add(event.getEntry());
+                fireIntervalAdded(this, index, index);
+                return true;
+            }
+            case UPDATED: {
+                int index = indexOf(event.getEntry());
+                if (index < 0) {
+                    return false;
+                }
+                fireContentsChanged(this, index, index);
+                return true;
+            }
+            case CLEARED: {
+                int size = entries.size();
+                entries.clear();
+                if (size > 0) {
+                    fireIntervalRemoved(this, 0, size - 1);
+                }
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+    
+    private boolean sameEntries(List<ClipboardMonitor.ClipboardEntry> other) {
+        if (other.size() != entries.size()) {
+            return false;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i) != other.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public int getSize() {
+        return entries.size();
+    }
+    
+    @Override
+    public ClipboardMonitor.ClipboardEntry getElementAt(int index) {
+        return entries.get(index);
+    }
+    
+    /**
+     * Position of this exact entry (not an equal one), or -1
+     */
+    public int indexOf(ClipboardMonitor.ClipboardEntry entry) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i) == entry) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private int lastIndexOf(ClipboardMonitor.ClipboardEntry entry) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i) == entry) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
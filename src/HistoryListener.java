@@ -0,0 +1,17 @@
+import java.util.List;
+
+/**
+ * Receives history deltas from ClipboardMonitor: entries inserted, moved to
+ * the front, evicted, restored, enriched or cleared. Snapshots published
+ * without any of these (e.g. after compression) aren't reported.
+ * Called on the monitor's writer thread - implementations must hand off
+ * to the EDT themselves and return quickly.
+ */
+public interface HistoryListener {
+    
+    /**
+     * @param events   changes since the last reported snapshot, in the order they were applied
+     * @param snapshot the history after all of them
+     */
+    void historyChanged(List<HistoryEvent> events, HistorySnapshot snapshot);
+}
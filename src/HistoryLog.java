@@ -0,0 +1,989 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped, encrypted log of history changes (opt-in persistence).
+ *
+ * The log is a series of segment files next to the configured path
+ * ("history.log.1", "history.log.2"...), each a 16-byte header (magic, format
+ * version, random nonce prefix) followed by records
+ *   [int bodyLength][int crc32(frame)][int metaLength][sealed meta][sealed content]
+ * Everything past the framing is AES-GCM encrypted (see HistoryCipher): the
+ * small meta part holds the record type, fingerprint, timestamp and preview;
+ * ADD records carry the content as a separately sealed part with its own
+ * nonce, so replay only decrypts meta and content is decrypted on access.
+ * Segments are pre-extended with zeros, so a zero length marks the end; a
+ * checksum mismatch marks a torn write and is treated as the end too.
+ *
+ * The checksum covers the frame - both lengths and the sealed meta - but not
+ * the content, so replay never reads content bytes and startup doesn't grow
+ * with the size of what's stored. Content is checked by its own GCM tag when
+ * it is decrypted. Version 1 segments checksummed the whole body; they are
+ * still read, and compaction rewrites them in the current format.
+ *
+ * Only the writer thread appends. Appends just copy into the mapping; a
+ * background thread calls force() at most once per interval when something
+ * was written (group commit), instead of one fsync per copy. force() never
+ * runs under the lock, so appends don't wait for the disk.
+ *
+ * Moves to the front, evictions and clears only add records, so the same
+ * background thread compacts the log once it is mostly garbage or spans too
+ * many segments: the sealed segments are rewritten as one snapshot
+ * ("history.log.N.snapshot") holding only the live entries. The snapshot is
+ * forced, renamed into place atomically and the directory is forced too, so
+ * the rename is durable before the segments it replaces are deleted. Replay
+ * starts at the newest snapshot, so a crash at any point leaves either the
+ * old segments or the snapshot in charge. Where a directory can't be forced,
+ * replaced segments are only deleted, never truncated first, so a rename lost
+ * in a crash still finds their contents.
+ *
+ * On open, replay() scans record headers only and rebuilds a compact index of
+ * live entries (offsets, lengths, fingerprints, previews). Payloads stay in
+ * the mapping and are decoded lazily when an entry's content is needed.
+ */
+public class HistoryLog {
+    private static final int MAGIC = 0x43424C47; // "CBLG"
+    private static final int FORMAT_VERSION = 2;
+    private static final int WHOLE_BODY_CRC_VERSION = 1; // Checksummed content too
+    private static final int HEADER_BYTES = 16;
+    private static final int SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    
+    // Compaction triggers
+    private static final int MAX_SEGMENTS = 8;
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+    private static final double MAX_GARBAGE_RATIO = 0.5;
+    
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TEMP_SUFFIX = ".tmp";
+    
+    private static final byte ADD = 1;
+    private static final byte TOUCH = 2;
+    private static final byte EVICT = 3;
+    private static final byte CLEAR = 4;
+    
+    /**
+     * A live entry rebuilt from the log - metadata on-heap, content in the mapping
+     */
+    public static class Record {
+        final long fingerprint;
+        final int charLength;
+        final String preview;
+        final byte[] contentNonce; // Content keeps its nonce, so compaction copies it sealed
+        final int sealedBytes;     // Encrypted content, tag included
+        final int recordBytes;     // Size of the ADD record, framing included
+        volatile long timestamp;
+        Location location;         // Moves to the snapshot when the log is compacted
+        
+        Record(long fingerprint, int charLength, String preview, byte[] contentNonce, int sealedBytes,
+               int recordBytes, long timestamp, Location location) {
+            this.fingerprint = fingerprint;
+            this.charLength = charLength;
+            this.preview = preview;
+            this.contentNonce = contentNonce;
+            this.sealedBytes = sealedBytes;
+            this.recordBytes = recordBytes;
+            this.timestamp = timestamp;
+            this.location = location;
+        }
+        
+        public long getFingerprint() {
+            return fingerprint;
+        }
+        
+        public int getCharLength() {
+            return charLength;
+        }
+        
+        public String getPreview() {
+            return preview;
+        }
+        
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+    
+    /**
+     * Where a record's sealed content starts
+     */
+    private static class Location {
+        final Segment segment;
+        final int offset;
+        
+        Location(Segment segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+    
+    private final Path file;
+    private final HistoryCipher cipher;
+    private final List<Segment> segments = new ArrayList<>(); // Snapshot (if any) first
+    private Segment active; // Null until the next append opens a new segment
+    private final Map<String, Record> live = new LinkedHashMap<>(); // Oldest first
+    private long liveBytes = 0;
+    private volatile boolean dirty = false;
+    private boolean compactionScheduled = false;
+    private boolean compactAfterClear = false;
+    private boolean closed = false;
+    private final ScheduledExecutorService maintenance;
+    
+    // Statistics
+    private long appendedRecords = 0;
+    private long flushes = 0;
+    private long compactions = 0;
+    private long reclaimedBytes = 0;
+    private long compactionNanos = 0;
+    
+    /**
+     * @param cipher encrypts every record; destroyed when the log is closed
+     */
+    public HistoryLog(Path file, HistoryCipher cipher) throws IOException {
+        this.file = file;
+        this.cipher = cipher;
+        Files.createDirectories(file.getParent());
+        openSegments();
+        
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "clipboard-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Finds the newest snapshot and the segments written after it; anything
+     * older is left over from an interrupted compaction and is deleted
+     */
+    private void openSegments() throws IOException {
+        List<Path> leftovers = new ArrayList<>();
+        List<Segment> found = new ArrayList<>();
+        long newestSnapshot = -1;
+        
+        String prefix = file.getFileName().toString() + ".";
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(file.getParent(),
+                path -> path.getFileName().toString().startsWith(prefix))) {
+            for (Path path : directory) {
+                String suffix = path.getFileName().toString().substring(prefix.length());
+                if (suffix.endsWith(TEMP_SUFFIX)) {
+                    leftovers.add(path); // Snapshot that was never swapped in
+                    continue;
+                }
+                boolean snapshot = suffix.endsWith(SNAPSHOT_SUFFIX);
+                if (snapshot) {
+                    suffix = suffix.substring(0, suffix.length() - SNAPSHOT_SUFFIX.length());
+                }
+                long number;
+                try {
+                    number = Long.parseLong(suffix);
+                } catch (NumberFormatException e) {
+                    continue; // Not ours
+                }
+                Segment segment = Segment.open(path, number, snapshot);
+                if (segment == null) {
+                    leftovers.add(path); // Created but never written
+                    continue;
+                }
+                found.add(segment);
+                if (snapshot) {
+                    newestSnapshot = Math.max(newestSnapshot, number);
+                }
+            }
+        }
+        
+        found.sort(Comparator.comparingLong(segment -> segment.number));
+        // The snapshot may have been renamed in just before a crash - make that durable first
+        boolean renameDurable = newestSnapshot < 0 || forceDirectory();
+        for (Segment segment : found) {
+            boolean current = segment.snapshot ? segment.number == newestSnapshot
+                                               : segment.number > newestSnapshot;
+            if (current) {
+                segments.add(segment);
+            } else {
+                segment.discard(renameDurable);
+            }
+        }
+        for (Path leftover : leftovers) {
+            Files.deleteIfExists(leftover);
+        }
+    }
+    
+    /**
+     * Scans the log and returns the live entries, most recent first.
+     * Appends go to a new segment: continuing one written by an earlier session
+     * could reuse the nonce of a torn record.
+     */
+    public synchronized List<Record> replay() {
+        live.clear();
+        liveBytes = 0;
+        for (Segment segment : segments) {
+            replay(segment);
+        }
+        active = null;
+        
+        List<Record> newestFirst = new ArrayList<>(live.values());
+        Collections.reverse(newestFirst);
+        maybeCompact(false); // The previous session may have left mostly garbage
+        return newestFirst;
+    }
+    
+    private void replay(Segment segment) {
+        ByteBuffer buffer = segment.mapped.duplicate();
+        CRC32 crc = new CRC32();
+        int position = HEADER_BYTES;
+        
+        while (position + 8 <= buffer.capacity()) {
+            int bodyLength = buffer.getInt(position);
+            if (bodyLength <= 0 || position + 8 + bodyLength > buffer.capacity()) {
+                break;
+            }
+            int bodyStart = position + 8;
+            int metaLength = buffer.getInt(bodyStart);
+            boolean intact = segment.formatVersion == WHOLE_BODY_CRC_VERSION
+                ? bodyChecksum(buffer, bodyStart, bodyLength) == buffer.getInt(position + 4)
+                : metaLength >= 0 && 4 + metaLength <= bodyLength
+                  && frameChecksum(crc, bodyLength, buffer, bodyStart) == buffer.getInt(position + 4);
+            if (!intact) {
+                System.err.println("History log: stopping at damaged record (" +
+                                   segment.path.getFileName() + ", offset " + position + ")");
+                break;
+            }
+            
+            ByteBuffer meta;
+            try {
+                ByteBuffer sealed = buffer.duplicate();
+                sealed.position(bodyStart + 4);
+                sealed.limit(bodyStart + 4 + metaLength);
+                meta = ByteBuffer.wrap(cipher.decrypt(HistoryCipher.nonce(segment.noncePrefix, position), sealed));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                System.err.println("History log: can't decrypt " + segment.path.getFileName() +
+                                   " (offset " + position + ") - written under another key?");
+                break;
+            }
+            
+            byte type = meta.get();
+            switch (type) {
+                case ADD: {
+                    long timestamp = meta.getLong();
+                    long fingerprint = meta.getLong();
+                    int charLength = meta.getInt();
+                    byte[] preview = new byte[meta.getShort()];
+                    meta.get(preview);
+                    byte[] contentNonce = new byte[HistoryCipher.NONCE_BYTES];
+                    meta.get(contentNonce);
+                    int contentStart = bodyStart + 4 + metaLength;
+                    putLive(new Record(fingerprint, charLength, new String(preview, StandardCharsets.UTF_8),
+                        contentNonce, bodyStart + bodyLength - contentStart, 8 + bodyLength, timestamp,
+                        new Location(segment, contentStart)));
+                    break;
+                }
+                case TOUCH: {
+                    long timestamp = meta.getLong();
+                    touchLive(key(meta.getLong(), meta.getInt()), timestamp);
+                    break;
+                }
+                case EVICT:
+                    removeLive(key(meta.getLong(), meta.getInt()));
+                    break;
+                case CLEAR:
+                    live.clear();
+                    liveBytes = 0;
+                    break;
+                default:
+                    // Unknown record from a newer version - skip it
+                    break;
+            }
+            position = bodyStart + bodyLength;
+        }
+        segment.end = position;
+    }
+    
+    private static String key(long fingerprint, int charLength) {
+        return fingerprint + ":" + charLength;
+    }
+    
+    private void putLive(Record record) {
+        removeLive(key(record.fingerprint, record.charLength));
+        live.put(key(record.fingerprint, record.charLength), record);
+        liveBytes += record.recordBytes;
+    }
+    
+    private void touchLive(String key, long timestamp) {
+        Record record = live.remove(key);
+        if (record != null) {
+            record.timestamp = timestamp;
+            live.put(key, record);
+        }
+    }
+    
+    private void removeLive(String key) {
+        Record record = live.remove(key);
+        if (record != null) {
+            liveBytes -= record.recordBytes;
+        }
+    }
+    
+    /**
+     * Lazily decrypted payload for a replayed record
+     */
+    public EntryPayload payloadFor(Record record) {
+        return new LogPayload(record);
+    }
+    
+    /**
+     * Whether a payload reads from this log (and stops working once it's closed)
+     */
+    public boolean holds(EntryPayload payload) {
+        return payload instanceof LogPayload && ((LogPayload) payload).owner() == this;
+    }
+    
+    public synchronized void appendAdd(long timestamp, long fingerprint, String content, String preview) {
+        byte[] previewBytes = preview.getBytes(StandardCharsets.UTF_8);
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        int sealedBytes = contentBytes.length + HistoryCipher.TAG_BYTES;
+        int metaLength = addMetaLength(previewBytes.length);
+        if (!ensureRoom(metaLength, sealedBytes)) {
+            return;
+        }
+        
+        // The content nonce only has to differ from every meta nonce: record offset + 1
+        byte[] contentNonce = HistoryCipher.nonce(active.noncePrefix, active.end + 1);
+        ByteBuffer sealed = ByteBuffer.allocate(sealedBytes);
+        cipher.encrypt(contentNonce, ByteBuffer.wrap(contentBytes), sealed);
+        sealed.flip();
+        
+        int recordStart = active.end;
+        int contentStart = writeRecord(active, addMeta(timestamp, fingerprint, content.length(), previewBytes,
+                                                       contentNonce), sealed);
+        putLive(new Record(fingerprint, content.length(), preview, contentNonce, sealedBytes,
+                           active.end - recordStart, timestamp, new Location(active, contentStart)));
+        appended();
+        maybeCompact(false);
+    }
+    
+    private static int addMetaLength(int previewBytes) {
+        return 1 + 8 + 8 + 4 + 2 + previewBytes + HistoryCipher.NONCE_BYTES;
+    }
+    
+    private static ByteBuffer addMeta(long timestamp, long fingerprint, int charLength,
+                                      byte[] previewBytes, byte[] contentNonce) {
+        ByteBuffer meta = ByteBuffer.allocate(addMetaLength(previewBytes.length));
+        meta.put(ADD).putLong(timestamp).putLong(fingerprint).putInt(charLength);
+        meta.putShort((short) previewBytes.length).put(previewBytes).put(contentNonce);
+        meta.flip();
+        return meta;
+    }
+    
+    public synchronized void appendTouch(long timestamp, long fingerprint, int charLength) {
+        ByteBuffer meta = ByteBuffer.allocate(1 + 8 + 8 + 4).put(TOUCH).putLong(timestamp).putLong(fingerprint).putInt(charLength);
+        if (ensureRoom(meta.capacity(), 0)) {
+            meta.flip();
+            writeRecord(active, meta, null);
+            appended();
+        }
+        touchLive(key(fingerprint, charLength), timestamp);
+        maybeCompact(false);
+    }
+    
+    public synchronized void appendEvict(long fingerprint, int charLength) {
+        ByteBuffer meta = ByteBuffer.allocate(1 + 8 + 4).put(EVICT).putLong(fingerprint).putInt(charLength);
+        if (ensureRoom(meta.capacity(), 0)) {
+            meta.flip();
+            writeRecord(active, meta, null);
+            appended();
+        }
+        removeLive(key(fingerprint, charLength));
+        maybeCompact(false);
+    }
+    
+    /**
+     * Logs a clear and compacts right away, so cleared content leaves the disk
+     */
+    public synchronized void appendClear() {
+        ByteBuffer meta = ByteBuffer.allocate(1).put(CLEAR);
+        if (ensureRoom(meta.capacity(), 0)) {
+            meta.flip();
+            writeRecord(active, meta, null);
+            appended();
+        }
+        live.clear();
+        liveBytes = 0;
+        maybeCompact(true);
+    }
+    
+    private void appended() {
+        appendedRecords++;
+        dirty = true;
+    }
+    
+    /**
+     * Makes sure the active segment can take a record, opening a new one when it's full
+     * @return false if no segment could be opened
+     */
+    private boolean ensureRoom(int metaLength, int sealedBytes) {
+        int recordBytes = recordBytes(metaLength, sealedBytes);
+        if (active != null && active.end + recordBytes + 4 <= active.mapped.capacity()) {
+            return true;
+        }
+        try {
+            openNextSegment(recordBytes + 4);
+            return true;
+        } catch (IOException e) {
+            System.err.println("History log: could not open a new segment: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private static int recordBytes(int metaLength, int sealedBytes) {
+        return 8 + 4 + metaLength + HistoryCipher.TAG_BYTES + sealedBytes;
+    }
+    
+    /**
+     * Encrypts meta with the nonce for the record's offset and writes the record
+     * @param sealed already encrypted content, or null
+     * @return the offset of the sealed content
+     */
+    private int writeRecord(Segment segment, ByteBuffer meta, ByteBuffer sealed) {
+        int metaSealedLength = meta.remaining() + HistoryCipher.TAG_BYTES;
+        ByteBuffer body = ByteBuffer.allocate(4 + metaSealedLength + (sealed == null ? 0 : sealed.remaining()));
+        body.putInt(metaSealedLength);
+        cipher.encrypt(HistoryCipher.nonce(segment.noncePrefix, segment.end), meta, body);
+        if (sealed != null) {
+            body.put(sealed);
+        }
+        body.flip();
+        return segment.write(body) + 4 + metaSealedLength;
+    }
+    
+    private void openNextSegment(int recordBytes) throws IOException {
+        if (active != null) {
+            // Sealed - the flusher only forces the active segment
+            Segment sealed = active;
+            if (maintenance.isShutdown()) {
+                sealed.mapped.force(); // Closing - nothing left to wait behind
+            } else {
+                maintenance.execute(() -> force(sealed));
+            }
+        }
+        long number = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).number + 1;
+        active = Segment.create(segmentPath(number, false), number, false,
+                                Math.max(SEGMENT_BYTES, HEADER_BYTES + recordBytes));
+        segments.add(active);
+    }
+    
+    private Path segmentPath(long number, boolean snapshot) {
+        return file.resolveSibling(file.getFileName() + "." + number + (snapshot ? SNAPSHOT_SUFFIX : ""));
+    }
+    
+    /**
+     * Group commit: one force() for everything appended since the last flush
+     */
+    public void flush() {
+        Segment target;
+        synchronized (this) {
+            if (!dirty || active == null) {
+                return;
+            }
+            dirty = false;
+            target = active;
+            flushes++;
+        }
+        force(target);
+    }
+    
+    /**
+     * Forces a segment to disk without holding the lock. Only called on the
+     * maintenance thread (or after it stopped), which is also the only one
+     * that discards segments, so it can't be discarded midway.
+     */
+    private void force(Segment segment) {
+        synchronized (this) {
+            if (segment.discarded) {
+                return;
+            }
+        }
+        segment.mapped.force();
+    }
+    
+    /**
+     * Schedules a compaction when the log is mostly garbage or spans too many
+     * segments. Called with the lock held.
+     * @param afterClear compact whenever anything is left to drop
+     */
+    private void maybeCompact(boolean afterClear) {
+        if (closed) {
+            return;
+        }
+        if (compactionScheduled) {
+            compactAfterClear |= afterClear; // Run again once the current one is done
+            return;
+        }
+        long logged = getLogBytes();
+        boolean tooManySegments = segments.size() >= MAX_SEGMENTS;
+        boolean mostlyGarbage = logged >= MIN_COMPACTION_BYTES &&
+                                logged - liveBytes > logged * MAX_GARBAGE_RATIO;
+        if ((afterClear && logged > liveBytes) || tooManySegments || mostlyGarbage) {
+            compactionScheduled = true;
+            maintenance.execute(this::compact);
+        }
+    }
+    
+    /**
+     * Rewrites the sealed segments as a snapshot of the live entries (maintenance thread).
+     * The lock is only held to seal the active segment and to swap the snapshot
+     * in; copying the live entries happens while the writer keeps appending.
+     */
+    private void compact() {
+        long start = System.nanoTime();
+        List<Segment> replaced;
+        List<Record> records;
+        long number;
+        Segment sealedActive = null;
+        synchronized (this) {
+            if (closed) {
+                compactionScheduled = false;
+                return;
+            }
+            // Sealed segments don't change, so they can be read without the lock
+            if (active != null && active.end > HEADER_BYTES) {
+                sealedActive = active;
+                active = null;
+            }
+            replaced = new ArrayList<>(segments);
+            replaced.remove(active);
+            records = new ArrayList<>(live.values());
+            number = replaced.isEmpty() ? 0 : replaced.get(replaced.size() - 1).number;
+        }
+        if (sealedActive != null) {
+            force(sealedActive);
+        }
+        
+        Segment snapshot = null;
+        try {
+            if (!replaced.isEmpty()) {
+                long capacity = HEADER_BYTES + 4;
+                for (Record record : records) {
+                    capacity += record.recordBytes;
+                }
+                Path finalPath = segmentPath(number, true);
+                snapshot = Segment.create(finalPath.resolveSibling(finalPath.getFileName() + TEMP_SUFFIX),
+                                          number, true, capacity);
+                List<Location> relocated = new ArrayList<>(records.size());
+                for (Record record : records) {
+                    // Only meta is re-encrypted (new segment, new nonce); content is copied as sealed
+                    ByteBuffer sealed = record.location.segment.mapped.duplicate();
+                    sealed.position(record.location.offset);
+                    sealed.limit(record.location.offset + record.sealedBytes);
+                    ByteBuffer meta = addMeta(record.timestamp, record.fingerprint, record.charLength,
+                                              record.preview.getBytes(StandardCharsets.UTF_8), record.contentNonce);
+                    relocated.add(new Location(snapshot, writeRecord(snapshot, meta, sealed)));
+                }
+                snapshot.mapped.force();
+                
+                // Once renamed the snapshot is in charge of the data, even if it's never swapped in
+                Segment renamed = snapshot;
+                moveIntoPlace(renamed, finalPath);
+                snapshot = null;
+                boolean renameDurable = forceDirectory();
+                
+                boolean swapped = false;
+                synchronized (this) {
+                    if (!closed) {
+                        swapIn(renamed, replaced, records, relocated);
+                        swapped = true;
+                        long nanos = System.nanoTime() - start;
+                        long reclaimed = -renamed.end;
+                        for (Segment segment : replaced) {
+                            reclaimed += segment.end;
+                        }
+                        compactions++;
+                        reclaimedBytes += reclaimed;
+                        compactionNanos += nanos;
+                        System.out.printf("History log compacted: %d segments into %d live entries, " +
+                                          "reclaimed %d KB in %.1fms%n",
+                            replaced.size(), records.size(), reclaimed / 1024, nanos / 1e6);
+                    }
+                }
+                if (swapped) {
+                    // Only the maintenance thread forces segments, so this doesn't need the lock
+                    for (Segment segment : replaced) {
+                        segment.discard(renameDurable);
+                    }
+                } else {
+                    renamed.close();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("History log compaction failed: " + e.getMessage());
+        } finally {
+            if (snapshot != null) {
+                snapshot.discard(true); // Never renamed into place
+            }
+            synchronized (this) {
+                compactionScheduled = false;
+                boolean again = compactAfterClear;
+                compactAfterClear = false;
+                if (again) {
+                    maybeCompact(true);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Renames a forced snapshot to its final name, where replay picks it up
+     */
+    private static void moveIntoPlace(Segment snapshot, Path finalPath) throws IOException {
+        try {
+            Files.move(snapshot.path, finalPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(snapshot.path, finalPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        snapshot.path = finalPath;
+    }
+    
+    /**
+     * fsyncs the log's directory, so renames and deletions in it survive a crash
+     * @return false where directories can't be forced (e.g. Windows)
+     */
+    private boolean forceDirectory() {
+        try (FileChannel directory = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Points the snapshot's records at it and takes the segments it replaces
+     * out of the log; the caller deletes them. Called with the lock held.
+     */
+    private void swapIn(Segment snapshot, List<Segment> replaced, List<Record> records, List<Location> relocated) {
+        // Records evicted since the compaction started are moved too; older ones read as empty
+        for (int i = 0; i < records.size(); i++) {
+            records.get(i).location = relocated.get(i);
+        }
+        segments.removeAll(replaced);
+        segments.add(0, snapshot);
+        for (Segment segment : replaced) {
+            segment.discarded = true;
+        }
+    }
+    
+    /**
+     * CRC of a record's body length, meta length and sealed meta - not its
+     * content, which is left to its GCM tag
+     * @param bodyStart where the body (starting with the meta length) is in buffer
+     */
+    private static int frameChecksum(CRC32 crc, int bodyLength, ByteBuffer buffer, int bodyStart) {
+        crc.reset();
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            crc.update(bodyLength >>> shift);
+        }
+        ByteBuffer frame = buffer.duplicate();
+        frame.position(bodyStart);
+        frame.limit(bodyStart + 4 + buffer.getInt(bodyStart));
+        crc.update(frame);
+        return (int) crc.getValue();
+    }
+    
+    /**
+     * CRC of a whole record body, as version 1 segments were written
+     */
+    private static int bodyChecksum(ByteBuffer buffer, int start, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(start);
+        body.limit(start + length);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+    
+    public Path getFile() {
+        return file;
+    }
+    
+    public HistoryCipher getCipher() {
+        return cipher;
+    }
+    
+    /**
+     * Bytes written across all segments, garbage included
+     */
+    public synchronized long getLogBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.end - HEADER_BYTES;
+        }
+        return bytes;
+    }
+    
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+    
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+    
+    public long getAppendedRecords() {
+        return appendedRecords;
+    }
+    
+    public long getFlushCount() {
+        return flushes;
+    }
+    
+    public synchronized long getCompactionCount() {
+        return compactions;
+    }
+    
+    public synchronized long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+    
+    public synchronized String getStatsSummary() {
+        return String.format("%d records in %d flushes, %d segments (%d KB, %d KB live), " +
+                             "%d compactions reclaimed %d KB in %.1fms total",
+            appendedRecords, flushes, segments.size(), getLogBytes() / 1024, liveBytes / 1024,
+            compactions, reclaimedBytes / 1024, compactionNanos / 1e6);
+    }
+    
+    public void close() {
+        maintenance.shutdown();
+        try {
+            // Let a running compaction finish its swap
+            maintenance.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (this) {
+            closed = true;
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        }
+        cipher.destroy();
+    }
+    
+    /**
+     * Deletes all of a log's segments
+     */
+    public static void delete(Path file) throws IOException {
+        String prefix = file.getFileName().toString() + ".";
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(file.getParent(),
+                path -> path.getFileName().toString().startsWith(prefix))) {
+            for (Path path : directory) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+    
+    /**
+     * One mapped segment file
+     */
+    private static class Segment {
+        final long number;
+        final boolean snapshot;
+        Path path;
+        final FileChannel channel;
+        final MappedByteBuffer mapped;
+        final long noncePrefix;
+        final int formatVersion;
+        final CRC32 crc = new CRC32();
+        int end = HEADER_BYTES; // Just past the last record
+        boolean discarded = false;
+        
+        private Segment(Path path, long number, boolean snapshot, FileChannel channel, long size) throws IOException {
+            this.path = path;
+            this.number = number;
+            this.snapshot = snapshot;
+            this.channel = channel;
+            this.mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            this.noncePrefix = mapped.getLong(8);
+            this.formatVersion = mapped.getInt(4);
+        }
+        
+        static Segment create(Path path, long number, boolean snapshot, long size) throws IOException {
+            FileChannel channel = openChannel(path);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(HistoryCipher.newNoncePrefix()).flip();
+            channel.write(header, 0);
+            return new Segment(path, number, snapshot, channel, size);
+        }
+        
+        /**
+         * @return null if the file was never written
+         */
+        static Segment open(Path path, long number, boolean snapshot) throws IOException {
+            FileChannel channel = openChannel(path);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt(0) == 0) {
+                channel.close();
+                return null;
+            }
+            if (header.getInt(0) != MAGIC) {
+                channel.close();
+                throw new IOException(path + " is not a history log");
+            }
+            if (header.getInt(4) != FORMAT_VERSION && header.getInt(4) != WHOLE_BODY_CRC_VERSION) {
+                channel.close();
+                throw new IOException("Unsupported history log version " + header.getInt(4));
+            }
+            return new Segment(path, number, snapshot, channel, channel.size());
+        }
+        
+        private static FileChannel openChannel(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                // Clipboard history can hold secrets - owner access only
+                Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system
+            }
+            return channel;
+        }
+        
+        /**
+         * Copies a framed record in at the end
+         * @return the offset of the record body
+         */
+        int write(ByteBuffer body) {
+            int bodyLength = body.remaining();
+            int checksum = frameChecksum(crc, bodyLength, body, body.position());
+            ByteBuffer target = mapped.duplicate();
+            target.position(end + 4);
+            target.putInt(checksum);
+            target.put(body);
+            target.putInt(0); // Keep the end marker valid past a recycled region
+            // Length last, so a torn append reads as the end of the log
+            mapped.putInt(end, bodyLength);
+            
+            int bodyStart = end + 8;
+            end = bodyStart + bodyLength;
+            return bodyStart;
+        }
+        
+        /**
+         * Deletes the file, truncating it first (so the space is freed even
+         * while still mapped) unless it may still be needed after a crash
+         * @param truncate only once the snapshot replacing it is durably in place
+         */
+        void discard(boolean truncate) {
+            discarded = true;
+            if (truncate) {
+                try {
+                    channel.truncate(0);
+                } catch (IOException e) {
+                    // Deleting is enough where a mapped file can't be truncated
+                }
+            }
+            close();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("History log: could not delete " + path + ": " + e.getMessage());
+            }
+        }
+        
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing history log: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Content left encrypted in the mapped log, decrypted on every access
+     */
+    private class LogPayload implements EntryPayload {
+        private final Record record;
+        
+        LogPayload(Record record) {
+            this.record = record;
+        }
+        
+        HistoryLog owner() {
+            return HistoryLog.this;
+        }
+        
+        @Override
+        public String getContent() {
+            ByteBuffer sealed = ByteBuffer.allocate(record.sealedBytes);
+            synchronized (HistoryLog.this) {
+                // Under the lock, so compaction can't drop the segment mid-read
+                if (record.location.segment.discarded) {
+                    return ""; // Evicted or cleared before the last compaction - the bytes are gone
+                }
+                ByteBuffer source = record.location.segment.mapped.duplicate();
+                source.position(record.location.offset);
+                source.limit(record.location.offset + record.sealedBytes);
+                sealed.put(source).flip();
+            }
+            try {
+                // Decrypted outside the lock; the plaintext is never cached
+                return new String(cipher.decrypt(record.contentNonce, sealed), StandardCharsets.UTF_8);
+            } catch (GeneralSecurityException | IllegalStateException e) {
+                // The content's GCM tag is its only integrity check (see the class comment)
+                System.err.println("History log: could not decrypt an entry, damaged or written under another key: "
+                                   + e.getMessage());
+                return "";
+            }
+        }
+        
+        @Override
+        public int length() {
+            return record.charLength;
+        }
+        
+        @Override
+        public long getHeapBytes() {
+            return 32;
+        }
+        
+        @Override
+        public long getOffHeapBytes() {
+            return 0; // Page cache, reclaimable by the OS
+        }
+        
+        @Override
+        public boolean isCompressible() {
+            return false; // Already out of the heap
+        }
+        
+        @Override
+        public void release() {
+            // Space is reclaimed when the log is compacted
+        }
+    }
+}
@@ -0,0 +1,653 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Substring and fuzzy search over history snapshots.
+ *
+ * Entries carry a lowercased search key computed once at capture, so a query
+ * doesn't lowercase every entry again. Typing narrows: when the new query
+ * contains the previous one, only the previous matches can match and only
+ * those are scanned. Otherwise substring queries of three or more chars ask
+ * the TrigramIndex for candidates and only verify those. Results for recent
+ * queries are cached until the history version changes.
+ *
+ * A query can also be limited to ContentTypes. The ContentTypeIndex's bitset
+ * for the selected types is ANDed with the trigram candidates, and checked
+ * against entries the index didn't cover; with no text, the type filter
+ * alone picks the entries.
+ *
+ * Searches also cover the snapshot's ColdTier records, newest first, after
+ * the in-memory entries (fuzzy matches from both are ranked together). Each
+ * record's char mask and trigram Bloom filter rule most records out without
+ * inflating them; cold matches are found again on every search rather than
+ * narrowed, and at most COLD_RESULT_LIMIT are listed outside fuzzy mode.
+ * Fuzzy queries can't use the Bloom filters, so only the newest
+ * COLD_FUZZY_INFLATION_LIMIT cold records that pass the char mask are read.
+ *
+ * Fuzzy mode matches the query as a subsequence and ranks matches fzf-style:
+ * points per matched char, bonuses at word boundaries and for runs of
+ * consecutive chars, penalties for gaps, and a small bonus for recent entries.
+ * Only the best FUZZY_RESULT_LIMIT are kept, in a bounded heap, so ranking
+ * stays linear in the history size.
+ *
+ * Not thread-safe - BackgroundSearch confines it to its search thread.
+ */
+public class HistorySearch {
+    private static final int CACHED_QUERIES = 16;
+    private static final int BASELINE_SAMPLE_INTERVAL = 16; // Every Nth indexed search is also timed as a scan
+    // Diagnostics only (-Dclipboard.search.baseline=true): the sampled scans cost as much as no index
+    private static final boolean SAMPLE_BASELINE = Boolean.getBoolean("clipboard.search.baseline");
+    public static final int FUZZY_RESULT_LIMIT = 200;
+    public static final int COLD_RESULT_LIMIT = 500;
+    public static final int COLD_FUZZY_INFLATION_LIMIT = 1000; // Per keystroke, instead of up to the whole tier
+    
+    // Fuzzy scoring, after fzf
+    private static final int SCORE_MATCH = 16;
+    private static final int PENALTY_GAP_START = -3;
+    private static final int PENALTY_GAP_EXTENSION = -1;
+    private static final int BONUS_BOUNDARY_WHITE = 10;
+    private static final int BONUS_BOUNDARY_DELIMITER = 9;
+    private static final int BONUS_BOUNDARY = 8;
+    private static final int BONUS_NON_WORD = 8;
+    private static final int BONUS_CONSECUTIVE = 4;
+    private static final int BONUS_FIRST_CHAR_MULTIPLIER = 2;
+    private static final int BONUS_RECENCY = 8; // Just copied; halves every RECENCY_HALF_LIFE_MS
+    private static final long RECENCY_HALF_LIFE_MS = 60 * 60 * 1000;
+    
+    private long cachedVersion = -1;
+    private final Map<String, Results> cache =
+        new LinkedHashMap<String, Results>(CACHED_QUERIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Results> eldest) {
+                return size() > CACHED_QUERIES;
+            }
+        };
+    private String lastQuery = null;
+    private int lastTypes = 0;
+    private boolean lastFuzzy = false;
+    private Results lastResults = null;
+    private final TrigramIndex index; // Null to always scan
+    private final ContentTypeIndex typeIndex; // Null to ignore type filters
+    private final Consumer<ClipboardMonitor.ClipboardEntry> unenriched; // Told about entries not enriched yet, or null
+    
+    // Statistics
+    private long searches = 0;
+    private long cacheHits = 0;
+    private long narrowedSearches = 0;
+    private long entriesScanned = 0;
+    private long indexedSearches = 0;
+    private long indexedNanos = 0;
+    private long scanSearches = 0;
+    private long scanNanos = 0;
+    private long baselineSamples = 0;
+    private long baselineNanos = 0;
+    private long coldSearches = 0;
+    private long coldChecked = 0;
+    private long coldInflated = 0;
+    private long coldMatched = 0;
+    private long coldNanos = 0;
+    private long coldTruncated = 0;
+    
+    public HistorySearch() {
+        this(null, null, null);
+    }
+    
+    public HistorySearch(TrigramIndex index, ContentTypeIndex typeIndex,
+                         Consumer<ClipboardMonitor.ClipboardEntry> unenriched) {
+        this.index = index;
+        this.typeIndex = typeIndex;
+        this.unenriched = unenriched;
+    }
+    
+    /**
+     * Lowercases and trims a query the same way search keys are built
+     */
+    public static String normalize(String query) {
+        return query.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Entries of the snapshot matching a normalized query: most recent first,
+     * or best first in fuzzy mode
+     * @param types ContentType bits; if any are set, only entries of one of those types match
+     * @param cancelled polled between entries; once it returns true the search stops
+     * @return the matches, or null if cancelled
+     */
+    public Results search(HistorySnapshot snapshot, String query, int types, boolean fuzzy,
+                          BooleanSupplier cancelled) {
+        searches++;
+        if (typeIndex == null) {
+            types = 0;
+        }
+        if (query.isEmpty() && types == 0) {
+            return new Results(snapshot.getEntries(), snapshot.getEntries(), null);
+        }
+        if (snapshot.getVersion() != cachedVersion) {
+            cache.clear();
+            lastQuery = null;
+            lastResults = null;
+            cachedVersion = snapshot.getVersion();
+        }
+        
+        String cacheKey = (fuzzy ? "~" : "=") + types + ":" + query;
+        Results results = cache.get(cacheKey);
+        if (results != null) {
+            cacheHits++;
+        } else {
+            List<ClipboardMonitor.ClipboardEntry> candidates = snapshot.getEntries();
+            ContentTypeIndex.Selection selection = types == 0 ? null : typeIndex.select(types);
+            boolean narrowed = false;
+            if (lastQuery != null && lastFuzzy == fuzzy && lastTypes == types &&
+                (fuzzy ? isSubsequence(lastQuery, query) : query.contains(lastQuery))) {
+                // Anything matching the longer query matched the previous one
+                candidates = lastResults.matched;
+                narrowed = true;
+                narrowedSearches++;
+            }
+            if (fuzzy && !query.isEmpty()) {
+                results = rank(candidates, query, selection, cancelled);
+            } else if (!narrowed && index != null && query.length() >= TrigramIndex.GRAM_CHARS) {
+                results = filterIndexed(candidates, query, selection, cancelled);
+            } else {
+                long start = System.nanoTime();
+                results = filter(candidates, query, null, selection, cancelled);
+                scanSearches++;
+                scanNanos += System.nanoTime() - start;
+            }
+            ColdTier.View cold = snapshot.getColdView();
+            if (results != null && cold != null && cold.size() > 0) {
+                results = addCold(results, cold, query, types, fuzzy, cancelled);
+            }
+            if (results == null) {
+                return null; // Partial results are neither cached nor narrowed from
+            }
+            cache.put(cacheKey, results);
+        }
+        lastQuery = query;
+        lastTypes = types;
+        lastFuzzy = fuzzy;
+        lastResults = results;
+        return results;
+    }
+    
+    /**
+     * Verifies only the index's candidates. With SAMPLE_BASELINE on, now and then
+     * also times a full scan of the same query to measure the index against.
+     */
+    private Results filterIndexed(List<ClipboardMonitor.ClipboardEntry> entries, String query,
+                                  ContentTypeIndex.Selection selection, BooleanSupplier cancelled) {
+        long start = System.nanoTime();
+        TrigramIndex.Candidates indexed = index.lookup(query);
+        if (selection != null) {
+            indexed = indexed.retainAll(selection);
+        }
+        Results results = filter(entries, query, indexed, selection, cancelled);
+        if (results == null) {
+            return null;
+        }
+        indexedSearches++;
+        indexedNanos += System.nanoTime() - start;
+        
+        if (SAMPLE_BASELINE && indexedSearches % BASELINE_SAMPLE_INTERVAL == 1) {
+            start = System.nanoTime();
+            if (filter(entries, query, null, selection, cancelled) != null) {
+                baselineSamples++;
+                baselineNanos += System.nanoTime() - start;
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * @param indexed candidates from the trigram index, or null to check every entry
+     * @param selection entries of the filtered types, or null for any type
+     */
+    private Results filter(List<ClipboardMonitor.ClipboardEntry> candidates, String query,
+                           TrigramIndex.Candidates indexed, ContentTypeIndex.Selection selection,
+                           BooleanSupplier cancelled) {
+        List<ClipboardMonitor.ClipboardEntry> matched = new ArrayList<>();
+        for (ClipboardMonitor.ClipboardEntry entry : candidates) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            noteIfUnenriched(entry);
+            if ((selection != null && !selection.contains(entry)) ||
+                (indexed != null && !indexed.mayContain(entry))) {
+                continue;
+            }
+            entriesScanned++;
+            if (matches(entry, query)) {
+                matched.add(entry);
+            }
+        }
+        return new Results(matched, matched, null);
+    }
+    
+    private Results rank(List<ClipboardMonitor.ClipboardEntry> candidates, String query,
+                         ContentTypeIndex.Selection selection, BooleanSupplier cancelled) {
+        long now = System.currentTimeMillis();
+        List<ClipboardMonitor.ClipboardEntry> matched = new ArrayList<>();
+        PriorityQueue<Match> best = new PriorityQueue<>(FUZZY_RESULT_LIMIT + 1, Match.WORST_FIRST);
+        for (ClipboardMonitor.ClipboardEntry entry : candidates) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            noteIfUnenriched(entry);
+            if (selection != null && !selection.contains(entry)) {
+                continue;
+            }
+            entriesScanned++;
+            Match match = fuzzyMatch(entry, query, now);
+            if (match == null) {
+                continue;
+            }
+            matched.add(entry);
+            if (best.size() < FUZZY_RESULT_LIMIT) {
+                best.add(match);
+            } else if (Match.WORST_FIRST.compare(match, best.peek()) > 0) {
+                best.poll();
+                best.add(match);
+            }
+        }
+        
+        List<Match> ranked = new ArrayList<>(best);
+        ranked.sort(Collections.reverseOrder(Match.WORST_FIRST));
+        List<ClipboardMonitor.ClipboardEntry> entries = new ArrayList<>(ranked.size());
+        Map<ClipboardMonitor.ClipboardEntry, Match> matches = new IdentityHashMap<>();
+        for (Match match : ranked) {
+            entries.add(match.entry);
+            matches.put(match.entry, match);
+        }
+        return new Results(entries, matched, matches);
+    }
+    
+    /**
+     * Entries restored from the log are enriched (and so indexed and typed) once
+     * first searched; until then they're scanned and no type filter matches them
+     */
+    private void noteIfUnenriched(ClipboardMonitor.ClipboardEntry entry) {
+        if (unenriched != null && entry.getMetadata() == null) {
+            unenriched.accept(entry);
+        }
+    }
+    
+    /**
+     * Adds the cold tier's matches to the in-memory results: after them, most
+     * recent first, or ranked together with them in fuzzy mode
+     */
+    private Results addCold(Results hot, ColdTier.View cold, String query, int types, boolean fuzzy,
+                            BooleanSupplier cancelled) {
+        long start = System.nanoTime();
+        boolean ranked = fuzzy && !query.isEmpty();
+        long now = System.currentTimeMillis();
+        ColdTier.Probe probe = new ColdTier.Probe(query, !ranked);
+        List<ClipboardMonitor.ClipboardEntry> coldEntries = new ArrayList<>();
+        List<Match> coldMatches = new ArrayList<>();
+        int inflated = 0;
+        for (int record = cold.size() - 1; record >= 0; record--) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            coldChecked++;
+            if (!cold.mayMatch(record, probe, types)) {
+                continue;
+            }
+            if (ranked && inflated == COLD_FUZZY_INFLATION_LIMIT) {
+                coldTruncated++;
+                break;
+            }
+            String content = cold.getContent(record);
+            inflated++;
+            coldInflated++;
+            if (ranked) {
+                int[] positions = fuzzyPositions(content, query);
+                if (positions != null) {
+                    coldMatches.add(toMatch(cold.toEntry(record, content), content, query, positions, now));
+                }
+            } else if (query.isEmpty() || containsIgnoreCase(content, query)) {
+                coldEntries.add(cold.toEntry(record, content));
+                if (coldEntries.size() == COLD_RESULT_LIMIT) {
+                    break;
+                }
+            }
+        }
+        coldSearches++;
+        coldMatched += ranked ? coldMatches.size() : coldEntries.size();
+        coldNanos += System.nanoTime() - start;
+        
+        if (!ranked) {
+            List<ClipboardMonitor.ClipboardEntry> entries = new ArrayList<>(hot.entries.size() + coldEntries.size());
+            entries.addAll(hot.entries);
+            entries.addAll(coldEntries);
+            return new Results(entries, hot.matched, hot.matches, coldEntries.size());
+        }
+        
+        PriorityQueue<Match> best = new PriorityQueue<>(FUZZY_RESULT_LIMIT + 1, Match.WORST_FIRST);
+        best.addAll(hot.matches.values());
+        for (Match match : coldMatches) {
+            if (best.size() < FUZZY_RESULT_LIMIT) {
+                best.add(match);
+            } else if (Match.WORST_FIRST.compare(match, best.peek()) > 0) {
+                best.poll();
+                best.add(match);
+            }
+        }
+        List<Match> ranking = new ArrayList<>(best);
+        ranking.sort(Collections.reverseOrder(Match.WORST_FIRST));
+        List<ClipboardMonitor.ClipboardEntry> entries = new ArrayList<>(ranking.size());
+        Map<ClipboardMonitor.ClipboardEntry, Match> matches = new IdentityHashMap<>();
+        for (Match match : ranking) {
+            entries.add(match.entry);
+            matches.put(match.entry, match);
+        }
+        return new Results(entries, hot.matched, matches, coldMatches.size());
+    }
+    
+    /**
+     * Whether an entry contains a normalized query
+     */
+    public static boolean matches(ClipboardMonitor.ClipboardEntry entry, String query) {
+        if (query.isEmpty()) {
+            return true;
+        }
+        String key = entry.getSearchKey();
+        if (key != null) {
+            return key.contains(query);
+        }
+        return containsIgnoreCase(entry.getContent(), query);
+    }
+    
+    /**
+     * Case-insensitive contains without a lowercased copy of the content
+     */
+    private static boolean containsIgnoreCase(String content, String query) {
+        int last = content.length() - query.length();
+        char first = query.charAt(0);
+        char firstUpper = Character.toUpperCase(first);
+        for (int i = 0; i <= last; i++) {
+            char c = content.charAt(i);
+            if ((c == first || c == firstUpper || Character.toLowerCase(c) == first) &&
+                content.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Scores an entry against a normalized query as a subsequence
+     * @return the match, or null if the query isn't a subsequence of the entry
+     */
+    static Match fuzzyMatch(ClipboardMonitor.ClipboardEntry entry, String query, long now) {
+        String key = entry.getSearchKey();
+        String text = key != null ? key : entry.getContent();
+        int[] positions = fuzzyPositions(text, query);
+        return positions == null ? null : toMatch(entry, text, query, positions, now);
+    }
+    
+    /**
+     * Scores the positions fuzzyPositions found, plus the recency bonus
+     */
+    private static Match toMatch(ClipboardMonitor.ClipboardEntry entry, String text, String query,
+                                 int[] positions, long now) {
+        long age = Math.max(0, now - entry.getTimestamp());
+        int recency = (int) Math.round(BONUS_RECENCY * (double) RECENCY_HALF_LIFE_MS /
+                                       (RECENCY_HALF_LIFE_MS + age));
+        return new Match(entry, score(text, query, positions) + recency, positions,
+                         toPreviewPositions(text, positions));
+    }
+    
+    /**
+     * Positions of the query's chars in the text: the leftmost occurrence,
+     * tightened from the right so the match spans as few chars as possible
+     */
+    private static int[] fuzzyPositions(String text, String query) {
+        int queryIndex = 0;
+        int end = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase(text.charAt(i)) == query.charAt(queryIndex) &&
+                ++queryIndex == query.length()) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return null;
+        }
+        
+        int start = end;
+        queryIndex = query.length() - 1;
+        for (int i = end; i >= 0; i--) {
+            if (Character.toLowerCase(text.charAt(i)) == query.charAt(queryIndex) && --queryIndex < 0) {
+                start = i;
+                break;
+            }
+        }
+        
+        int[] positions = new int[query.length()];
+        queryIndex = 0;
+        for (int i = start; i <= end && queryIndex < positions.length; i++) {
+            if (Character.toLowerCase(text.charAt(i)) == query.charAt(queryIndex)) {
+                positions[queryIndex++] = i;
+            }
+        }
+        return positions;
+    }
+    
+    private static int score(String text, String query, int[] positions) {
+        int score = 0;
+        int firstBonus = 0;
+        for (int q = 0; q < positions.length; q++) {
+            int position = positions[q];
+            int bonus = boundaryBonus(position == 0 ? ' ' : text.charAt(position - 1), text.charAt(position));
+            if (q > 0 && position == positions[q - 1] + 1) {
+                // A run keeps the bonus of the boundary it started at
+                if (bonus >= BONUS_BOUNDARY && bonus > firstBonus) {
+                    firstBonus = bonus;
+                }
+                bonus = Math.max(Math.max(bonus, firstBonus), BONUS_CONSECUTIVE);
+            } else {
+                if (q > 0) {
+                    int gap = position - positions[q - 1] - 1;
+                    score += PENALTY_GAP_START + PENALTY_GAP_EXTENSION * (gap - 1);
+                }
+                firstBonus = bonus;
+            }
+            score += SCORE_MATCH + (q == 0 ? bonus * BONUS_FIRST_CHAR_MULTIPLIER : bonus);
+        }
+        return score;
+    }
+    
+    private static int boundaryBonus(char previous, char current) {
+        if (!Character.isLetterOrDigit(current)) {
+            return Character.isWhitespace(current) ? 0 : BONUS_NON_WORD;
+        }
+        if (Character.isWhitespace(previous)) {
+            return BONUS_BOUNDARY_WHITE;
+        }
+        if (previous == '/' || previous == ',' || previous == ':' || previous == ';' || previous == '|') {
+            return BONUS_BOUNDARY_DELIMITER;
+        }
+        if (!Character.isLetterOrDigit(previous)) {
+            return BONUS_BOUNDARY;
+        }
+        return 0;
+    }
+    
+    /**
+     * Maps content positions onto the entry's preview, which collapses
+     * whitespace runs and is trimmed. Positions past the preview are dropped.
+     */
+    private static int[] toPreviewPositions(String text, int[] positions) {
+        int limit = Math.min(text.length(), ClipboardMonitor.ClipboardEntry.PREVIEW_CHARS);
+        int[] mapped = new int[positions.length];
+        int count = 0;
+        int next = 0;
+        int previewIndex = 0;
+        boolean leading = true;
+        boolean inWhitespace = false;
+        for (int i = 0; i < limit && next < positions.length; i++) {
+            boolean whitespace = ClipboardMonitor.ClipboardEntry.isCollapsedWhitespace(text.charAt(i));
+            int at = -1;
+            if (!whitespace) {
+                at = previewIndex++;
+                leading = false;
+            } else if (!inWhitespace && !leading) {
+                at = previewIndex++; // The single space a run collapses to
+            }
+            inWhitespace = whitespace;
+            if (positions[next] == i) {
+                if (at >= 0) {
+                    mapped[count++] = at;
+                }
+                next++;
+            }
+        }
+        return count == mapped.length ? mapped : Arrays.copyOf(mapped, count);
+    }
+    
+    /**
+     * Whether every char of needle appears in haystack, in order
+     */
+    private static boolean isSubsequence(String needle, String haystack) {
+        int n = 0;
+        for (int i = 0; i < haystack.length() && n < needle.length(); i++) {
+            if (haystack.charAt(i) == needle.charAt(n)) {
+                n++;
+            }
+        }
+        return n == needle.length();
+    }
+    
+    public String getStatsSummary() {
+        String summary = String.format("%d searches, %d cache hits, %d narrowed, %d entries scanned; " +
+                                       "scan avg %.3fms (%d)",
+            searches, cacheHits, narrowedSearches, entriesScanned,
+            scanSearches == 0 ? 0 : scanNanos / 1e6 / scanSearches, scanSearches);
+        if (typeIndex != null) {
+            summary += "; types: " + typeIndex.getStatsSummary();
+        }
+        if (coldSearches > 0) {
+            summary += String.format("; cold tier: %d searches (avg %.3fms), %d records checked, " +
+                                     "%.1f%% skipped by filters, %d inflated, %d matched (%.1f%% of inflated), " +
+                                     "%d fuzzy searches stopped at the inflation limit",
+                coldSearches, coldNanos / 1e6 / coldSearches, coldChecked,
+                coldChecked == 0 ? 0 : 100.0 * (coldChecked - coldInflated) / coldChecked, coldInflated,
+                coldMatched, coldInflated == 0 ? 0 : 100.0 * coldMatched / coldInflated, coldTruncated);
+        }
+        if (index == null) {
+            return summary;
+        }
+        summary += String.format("; indexed avg %.3fms (%d)",
+            indexedSearches == 0 ? 0 : indexedNanos / 1e6 / indexedSearches, indexedSearches);
+        if (SAMPLE_BASELINE) {
+            summary += String.format(" vs full-scan baseline avg %.3fms (%d sampled)",
+                baselineSamples == 0 ? 0 : baselineNanos / 1e6 / baselineSamples, baselineSamples);
+        }
+        return summary + "; index: " + index.getStatsSummary();
+    }
+    
+    /**
+     * Entries to show for a query, plus fuzzy match details
+     */
+    public static final class Results {
+        private final List<ClipboardMonitor.ClipboardEntry> entries;
+        private final List<ClipboardMonitor.ClipboardEntry> matched; // Every match, for narrowing
+        private final Map<ClipboardMonitor.ClipboardEntry, Match> matches; // Null outside fuzzy mode
+        private final int coldMatches; // Cold tier matches, not in matched
+        
+        Results(List<ClipboardMonitor.ClipboardEntry> entries, List<ClipboardMonitor.ClipboardEntry> matched,
+                Map<ClipboardMonitor.ClipboardEntry, Match> matches) {
+            this(entries, matched, matches, 0);
+        }
+        
+        Results(List<ClipboardMonitor.ClipboardEntry> entries, List<ClipboardMonitor.ClipboardEntry> matched,
+                Map<ClipboardMonitor.ClipboardEntry, Match> matches, int coldMatches) {
+            this.entries = entries;
+            this.matched = matched;
+            this.matches = matches;
+            this.coldMatches = coldMatches;
+        }
+        
+        public List<ClipboardMonitor.ClipboardEntry> getEntries() {
+            return entries;
+        }
+        
+        /**
+         * Whether the entries are in fuzzy rank order rather than recency order
+         */
+        public boolean isRanked() {
+            return matches != null;
+        }
+        
+        /**
+         * Total number of matches, of which fuzzy mode shows the best
+         */
+        public int getMatchCount() {
+            return matched.size() + coldMatches;
+        }
+        
+        /**
+         * How many of the matches came from the cold tier
+         */
+        public int getColdMatchCount() {
+            return coldMatches;
+        }
+        
+        /**
+         * Fuzzy match details for a shown entry, or null
+         */
+        public Match getMatch(ClipboardMonitor.ClipboardEntry entry) {
+            return matches == null ? null : matches.get(entry);
+        }
+    }
+    
+    /**
+     * A fuzzy match: its score and where the query's chars were found
+     */
+    public static final class Match {
+        // Lowest score first; on ties the older entry counts as worse
+        static final Comparator<Match> WORST_FIRST = Comparator.<Match>comparingInt(m -> m.score)
+            .thenComparingLong(m -> m.entry.getTimestamp());
+        
+        private final ClipboardMonitor.ClipboardEntry entry;
+        private final int score;
+        private final int[] positions;
+        private final int[] previewPositions;
+        
+        Match(ClipboardMonitor.ClipboardEntry entry, int score, int[] positions, int[] previewPositions) {
+            this.entry = entry;
+            this.score = score;
+            this.positions = positions;
+            this.previewPositions = previewPositions;
+        }
+        
+        public int getScore() {
+            return score;
+        }
+        
+        /**
+         * Matched char offsets in the entry's content, ascending
+         */
+        public int[] getPositions() {
+            return positions;
+        }
+        
+        /**
+         * Matched char offsets in the entry's preview, ascending
+         */
+        public int[] getPreviewPositions() {
+            return previewPositions;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, version-stamped view of the clipboard history.
+ *
+ * ClipboardMonitor's writer thread builds a new snapshot after every change and
+ * publishes it atomically; readers just grab the current reference, so they
+ * never copy, never lock and never see a half-applied change. Entries in the
+ * ColdTier come with it as a read-only view.
+ */
+public final class HistorySnapshot {
+    public static final HistorySnapshot EMPTY =
+        new HistorySnapshot(0, Collections.emptyList(), 0, null);
+    
+    private final long version;
+    private final List<ClipboardMonitor.ClipboardEntry> entries;
+    private final long retainedBytes;
+    private final ColdTier.View cold;
+    
+    HistorySnapshot(long version, List<ClipboardMonitor.ClipboardEntry> entries, long retainedBytes,
+                    ColdTier.View cold) {
+        this.version = version;
+        this.entries = Collections.unmodifiableList(entries);
+        this.retainedBytes = retainedBytes;
+        this.cold = cold;
+    }
+    
+    /**
+     * Monotonically increasing; bumped on every history change
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Hot-tier entries most-recent-first (read-only)
+     */
+    public List<ClipboardMonitor.ClipboardEntry> getEntries() {
+        return entries;
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+    
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+    
+    /**
+     * The cold tier's records at this version, or null if there's no cold tier
+     */
+    public ColdTier.View getColdView() {
+        return cold;
+    }
+    
+    public boolean isNewerThan(long otherVersion) {
+        return version > otherVersion;
+    }
+}
@@ -0,0 +1,59 @@
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.Transferable;
+
+/**
+ * In-memory ClipboardSource for exercising the capture path without a display.
+ * Behaves like a fully push-capable clipboard: every change is reported
+ * to the listener synchronously.
+ *
+ * Usage:
+ *   InMemoryClipboardSource source = new InMemoryClipboardSource();
+ *   ClipboardMonitor monitor = new ClipboardMonitor(source);
+ *   monitor.startMonitoring();
+ *   source.copy("hello");
+ */
+public class InMemoryClipboardSource implements ClipboardSource {
+    private volatile Transferable contents;
+    private volatile ChangeListener listener;
+
+    /**
+     * Simulates another application copying text
+     */
+    public void copy(String text) {
+        setContents(new StringSelection(text));
+    }
+
+    @Override
+    public Transferable getContents() {
+        return contents;
+    }
+
+    @Override
+    public void setContents(Transferable contents) {
+        this.contents = contents;
+        ChangeListener current = listener;
+        if (current != null) {
+            current.clipboardChanged();
+        }
+    }
+
+    @Override
+    public void start(ChangeListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void stop() {
+        listener = null;
+    }
+
+    @Override
+    public boolean isPushActive() {
+        return listener != null;
+    }
+
+    @Override
+    public void contentsObserved(Transferable contents) {
+        // Always push - nothing to arm
+    }
+}
@@ -0,0 +1,170 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap storage for large clipboard payloads.
+ *
+ * Memory is reserved in direct ByteBuffer slabs, carved into fixed-size blocks.
+ * A payload is UTF-8 encoded and spread over as many blocks as it needs, so
+ * there's no fragmentation to manage: freeing a payload just pushes its blocks
+ * back on the free stack for reuse. Slabs are added lazily up to a cap; when the
+ * arena is full, store() returns null and the caller keeps the content on-heap.
+ *
+ * store() and release() are synchronized; reads only take the payload's lock,
+ * so materializing one payload never blocks capture of another.
+ */
+public class OffHeapArena {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BLOCKS_PER_SLAB = 1024; // 4 MiB slabs
+    
+    private final int maxSlabs;
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0]; // Copy-on-grow
+    private int[] freeBlocks = new int[0];
+    private int freeCount = 0;
+    private long usedBytes = 0;
+    private int liveAllocations = 0;
+    
+    public OffHeapArena(long maxCapacityBytes) {
+        long slabBytes = (long) BLOCK_SIZE * BLOCKS_PER_SLAB;
+        this.maxSlabs = (int) Math.max(1, maxCapacityBytes / slabBytes);
+    }
+    
+    /**
+     * Copies the content into the arena.
+     * @return the off-heap payload, or null if the arena has no room
+     */
+    public synchronized EntryPayload store(String content) {
+        byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+        int blockCount = Math.max(1, (utf8.length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        
+        while (freeCount < blockCount) {
+            if (!addSlab()) {
+                return null;
+            }
+        }
+        
+        ByteBuffer[] current = slabs;
+        int[] blocks = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            int block = freeBlocks[--freeCount];
+            blocks[i] = block;
+            
+            int offset = i * BLOCK_SIZE;
+            int chunk = Math.min(BLOCK_SIZE, utf8.length - offset);
+            if (chunk > 0) {
+                ByteBuffer target = current[block / BLOCKS_PER_SLAB].duplicate();
+                target.position((block % BLOCKS_PER_SLAB) * BLOCK_SIZE);
+                target.put(utf8, offset, chunk);
+            }
+        }
+        
+        usedBytes += (long) blockCount * BLOCK_SIZE;
+        liveAllocations++;
+        return new ArenaPayload(blocks, utf8.length, content.length());
+    }
+    
+    private boolean addSlab() {
+        ByteBuffer[] current = slabs;
+        if (current.length >= maxSlabs) {
+            return false;
+        }
+        
+        ByteBuffer[] grown = new ByteBuffer[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = ByteBuffer.allocateDirect(BLOCK_SIZE * BLOCKS_PER_SLAB);
+        
+        int firstBlock = current.length * BLOCKS_PER_SLAB;
+        int[] free = new int[freeBlocks.length + BLOCKS_PER_SLAB];
+        System.arraycopy(freeBlocks, 0, free, 0, freeCount);
+        for (int i = BLOCKS_PER_SLAB - 1; i >= 0; i--) {
+            free[freeCount++] = firstBlock + i;
+        }
+        freeBlocks = free;
+        slabs = grown;
+        return true;
+    }
+    
+    private synchronized void free(int[] blocks) {
+        for (int block : blocks) {
+            freeBlocks[freeCount++] = block;
+        }
+        usedBytes -= (long) blocks.length * BLOCK_SIZE;
+        liveAllocations--;
+    }
+    
+    private void read(int[] blocks, byte[] target) {
+        ByteBuffer[] current = slabs;
+        for (int i = 0; i < blocks.length; i++) {
+            int offset = i * BLOCK_SIZE;
+            int chunk = Math.min(BLOCK_SIZE, target.length - offset);
+            if (chunk <= 0) {
+                break;
+            }
+            ByteBuffer source = current[blocks[i] / BLOCKS_PER_SLAB].duplicate();
+            source.position((blocks[i] % BLOCKS_PER_SLAB) * BLOCK_SIZE);
+            source.get(target, offset, chunk);
+        }
+    }
+    
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+    
+    public long getReservedBytes() {
+        return (long) slabs.length * BLOCK_SIZE * BLOCKS_PER_SLAB;
+    }
+    
+    public synchronized int getLiveAllocations() {
+        return liveAllocations;
+    }
+    
+    /**
+     * Content stored in arena blocks; only the block list stays on-heap
+     */
+    private class ArenaPayload implements EntryPayload {
+        private final int[] blocks;
+        private final int byteLength;
+        private final int charLength;
+        private boolean released = false;
+        
+        ArenaPayload(int[] blocks, int byteLength, int charLength) {
+            this.blocks = blocks;
+            this.byteLength = byteLength;
+            this.charLength = charLength;
+        }
+        
+        @Override
+        public synchronized String getContent() {
+            if (released) {
+                // Its blocks may already hold another payload's bytes
+                throw new IllegalStateException("Off-heap payload read after it was released");
+            }
+            byte[] utf8 = new byte[byteLength];
+            read(blocks, utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+        
+        @Override
+        public int length() {
+            return charLength;
+        }
+        
+        @Override
+        public long getHeapBytes() {
+            return 48 + 4L * blocks.length;
+        }
+        
+        @Override
+        public long getOffHeapBytes() {
+            return (long) blocks.length * BLOCK_SIZE;
+        }
+        
+        @Override
+        public synchronized void release() {
+            if (!released) {
+                released = true;
+                free(blocks);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.awt.Toolkit;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.FlavorEvent;
+import java.awt.datatransfer.FlavorListener;
+import java.awt.datatransfer.Transferable;
+
+/**
+ * ClipboardSource backed by the AWT system clipboard.
+ *
+ * Push mode combines two notifications:
+ * - FlavorListener, which fires when the set of available flavors changes
+ * - ClipboardOwner.lostOwnership, which fires when another application replaces
+ *   contents that we own
+ *
+ * FlavorListener alone misses text-to-text copies, so push is only trusted
+ * while we own the clipboard, i.e. after an entry was pasted back through
+ * setContents: the next external copy then revokes our ownership and wakes the
+ * monitor immediately. Other applications' copies are never re-published just
+ * to take ownership, since a newer copy landing in between would be overwritten
+ * with stale contents. For those the monitor keeps polling, and the flavor
+ * listener only wakes it early.
+ *
+ * On macOS ownership loss is only reported when the app is re-activated, so
+ * push mode is disabled there by default and the monitor polls instead.
+ */
+public class SystemClipboardSource implements ClipboardSource, ClipboardOwner, FlavorListener {
+    private final Clipboard clipboard;
+    private final boolean pushEnabled;
+    private volatile ChangeListener listener;
+    private volatile boolean owner = false;
+
+    public SystemClipboardSource() {
+        this(!System.getProperty("os.name").toLowerCase().contains("mac"));
+    }
+
+    public SystemClipboardSource(boolean pushEnabled) {
+        this.clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+        this.pushEnabled = pushEnabled;
+    }
+
+    @Override
+    public Transferable getContents() throws Exception {
+        return clipboard.getContents(null);
+    }
+
+    @Override
+    public void setContents(Transferable contents) {
+        // Take ownership so we hear about the next external copy
+        owner = pushEnabled;
+        clipboard.setContents(contents, pushEnabled ? this : null);
+    }
+
+    @Override
+    public void start(ChangeListener listener) {
+        this.listener = listener;
+        if (pushEnabled) {
+            clipboard.addFlavorListener(this);
+        }
+    }
+
+    @Override
+    public void stop() {
+        clipboard.removeFlavorListener(this);
+        listener = null;
+        owner = false;
+    }
+
+    @Override
+    public boolean isPushActive() {
+        return pushEnabled && owner;
+    }
+
+    @Override
+    public void contentsObserved(Transferable contents) {
+        // Nothing to arm - ownership is only taken for our own pastes (see class comment)
+    }
+
+    @Override
+    public void lostOwnership(Clipboard clipboard, Transferable contents) {
+        owner = false;
+        notifyListener();
+    }
+
+    @Override
+    public void flavorsChanged(FlavorEvent e) {
+        notifyListener();
+    }
+
+    private void notifyListener() {
+        ChangeListener current = listener;
+        if (current != null) {
+            current.clipboardChanged();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small thumbnails for image clipboard entries, built off the EDT.
+ *
+ * The renderer asks get() on every paint; on a miss it calls request(), shows
+ * PLACEHOLDER and gets a callback on the EDT once the thumbnail is ready, so it
+ * can repaint just that cell. Thumbnails live in an LRU bounded by their pixel
+ * memory. Every thumbnail (and the placeholder) has the same fixed size so the
+ * list never has to re-measure a row when one arrives.
+ */
+public class ThumbnailCache {
+    public static final int THUMBNAIL_SIZE = 40;
+    public static final ImageIcon PLACEHOLDER = new ImageIcon(createPlaceholder());
+    
+    private final long maxBytes;
+    private final Map<CapturedContents, ImageIcon> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<CapturedContents> pending = new HashSet<>();
+    private long cachedBytes = 0;
+    private final ExecutorService executor;
+    
+    public ThumbnailCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "clipboard-thumbnails");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+    
+    /**
+     * Cached thumbnail, or null if it hasn't been built yet
+     */
+    public synchronized ImageIcon get(CapturedContents captured) {
+        return cache.get(captured);
+    }
+    
+    /**
+     * Builds the thumbnail in the background unless already queued.
+     * onReady runs on the EDT once it's in the cache.
+     */
+    public void request(CapturedContents captured, Runnable onReady) {
+        synchronized (this) {
+            if (cache.containsKey(captured) || !pending.add(captured)) {
+                return;
+            }
+        }
+        
+        executor.execute(() -> {
+            ImageIcon thumbnail = null;
+            try {
+                captured.materialize();
+                BufferedImage image = captured.getImage();
+                if (image != null) {
+                    thumbnail = new ImageIcon(downscale(image));
+                }
+            } catch (Exception e) {
+                System.err.println("Error creating thumbnail: " + e.getMessage());
+            }
+            
+            synchronized (this) {
+                pending.remove(captured);
+                if (thumbnail != null) {
+                    cache.put(captured, thumbnail);
+                    cachedBytes += bytesOf(thumbnail);
+                    trim();
+                }
+            }
+            if (thumbnail != null) {
+                SwingUtilities.invokeLater(onReady);
+            }
+        });
+    }
+    
+    private void trim() {
+        Iterator<ImageIcon> it = cache.values().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            cachedBytes -= bytesOf(it.next());
+            it.remove();
+        }
+    }
+    
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+    
+    public synchronized int size() {
+        return cache.size();
+    }
+    
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    private static long bytesOf(ImageIcon icon) {
+        return 4L * icon.getIconWidth() * icon.getIconHeight();
+    }
+    
+    /**
+     * Fits the image into a THUMBNAIL_SIZE square, halving repeatedly first so
+     * large images don't alias badly
+     */
+    private static BufferedImage downscale(BufferedImage image) {
+        double scale = Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(image.getWidth(), image.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= targetWidth && current.getHeight() / 2 >= targetHeight) {
+            current = resize(current, current.getWidth() / 2, current.getHeight() / 2);
+        }
+        if (current.getWidth() != targetWidth || current.getHeight() != targetHeight) {
+            current = resize(current, targetWidth, targetHeight);
+        }
+        
+        // Center on a fixed-size canvas so every row has the same height
+        BufferedImage canvas = new BufferedImage(THUMBNAIL_SIZE, THUMBNAIL_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = canvas.createGraphics();
+        g.drawImage(current, (THUMBNAIL_SIZE - targetWidth) / 2, (THUMBNAIL_SIZE - targetHeight) / 2, null);
+        g.dispose();
+        return canvas;
+    }
+    
+    private static BufferedImage resize(BufferedImage source, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = resized.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return resized;
+    }
+    
+    private static BufferedImage createPlaceholder() {
+        BufferedImage placeholder = new BufferedImage(THUMBNAIL_SIZE, THUMBNAIL_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = placeholder.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(220, 220, 220));
+        g.fillRoundRect(2, 2, THUMBNAIL_SIZE - 4, THUMBNAIL_SIZE - 4, 6, 6);
+        g.setColor(new Color(180, 180, 180));
+        g.drawRoundRect(2, 2, THUMBNAIL_SIZE - 5, THUMBNAIL_SIZE - 5, 6, 6);
+        g.dispose();
+        return placeholder;
+    }
+}
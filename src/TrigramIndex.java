@@ -0,0 +1,270 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trigram posting lists over history entries' search keys, so a substring
+ * query only verifies entries containing all of its trigrams instead of
+ * scanning every entry.
+ *
+ * ClipboardMonitor's writer thread adds entries once they're enriched and
+ * removes them when evicted; each indexed entry gets an id, and ids freed by
+ * removed entries are handed out again, so ids - and the ContentTypeIndex's
+ * bitsets they number - stay as dense as the history. Posting lists are sorted
+ * int arrays; searches intersect the lists of a query's trigrams, smallest
+ * first. Since an id can change hands, entries also get a sequence number
+ * that only grows, which tells lookups which entries they covered.
+ *
+ * Entries without a search key (too large) get an id but no postings and,
+ * like entries indexed after a lookup, are always candidates. Synchronized:
+ * the writer updates it while the search thread reads.
+ */
+public class TrigramIndex {
+    public static final int GRAM_CHARS = 3;
+    private static final int INITIAL_POSTING_CAPACITY = 4;
+    
+    // Rough per-object costs for the memory estimate
+    private static final long MAP_ENTRY_BYTES = 32 + 16; // HashMap node + boxed key
+    private static final long POSTING_BYTES = 16 + 16; // Posting + int[] headers
+    
+    private final Map<Long, Posting> postings = new HashMap<>();
+    private int nextId = 0;
+    private int[] freeIds = new int[INITIAL_POSTING_CAPACITY]; // Ids of removed entries, reused first
+    private int freeCount = 0;
+    private long nextSeq = 0;
+    private int documents = 0;
+    private long postingCount = 0;
+    private long postingCapacity = 0;
+    
+    // Statistics
+    private long lookups = 0;
+    private long lookupNanos = 0;
+    
+    /**
+     * Gives an entry an id and indexes its search key, if it has one (writer
+     * thread). No-op if it's already indexed.
+     */
+    public synchronized void add(ClipboardMonitor.ClipboardEntry entry) {
+        if (entry.getIndexId() >= 0) {
+            return;
+        }
+        String key = entry.getSearchKey();
+        int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        for (int i = 0; key != null && i + GRAM_CHARS <= key.length(); i++) {
+            long gram = gram(key, i);
+            Posting posting = postings.get(gram);
+            if (posting == null) {
+                posting = new Posting();
+                postings.put(gram, posting);
+                postingCapacity += posting.ids.length;
+            }
+            int capacity = posting.ids.length;
+            if (posting.insert(id)) {
+                postingCount++;
+                postingCapacity += posting.ids.length - capacity;
+            }
+        }
+        // Sequence before id, so a reader that sees the id sees its sequence too
+        entry.setIndexSeq(nextSeq++);
+        entry.setIndexId(id);
+        documents++;
+    }
+    
+    /**
+     * Drops an evicted entry (writer thread)
+     */
+    public synchronized void remove(ClipboardMonitor.ClipboardEntry entry) {
+        int id = entry.getIndexId();
+        String key = entry.getSearchKey();
+        if (id < 0) {
+            return;
+        }
+        for (int i = 0; key != null && i + GRAM_CHARS <= key.length(); i++) {
+            long gram = gram(key, i);
+            Posting posting = postings.get(gram);
+            if (posting != null && posting.remove(id)) {
+                postingCount--;
+                if (posting.size == 0) {
+                    postings.remove(gram);
+                    postingCapacity -= posting.ids.length;
+                }
+            }
+        }
+        documents--;
+        entry.setIndexId(-1);
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+    
+    /**
+     * Forgets every entry and starts numbering from 0 again. The entries lose
+     * their ids, so copies still held by an older snapshot can't be confused
+     * with the entries that get them next.
+     */
+    public synchronized void clear(List<ClipboardMonitor.ClipboardEntry> entries) {
+        for (ClipboardMonitor.ClipboardEntry entry : entries) {
+            entry.setIndexId(-1);
+        }
+        postings.clear();
+        nextId = 0;
+        freeCount = 0;
+        documents = 0;
+        postingCount = 0;
+        postingCapacity = 0;
+    }
+    
+    /**
+     * Entries that may contain a normalized query of at least GRAM_CHARS chars
+     */
+    public synchronized Candidates lookup(String query) {
+        long start = System.nanoTime();
+        List<Posting> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM_CHARS <= query.length(); i++) {
+            Posting posting = postings.get(gram(query, i));
+            if (posting == null) {
+                lists.clear(); // A trigram nothing contains - only unindexed entries can match
+                lists.add(Posting.EMPTY);
+                break;
+            }
+            lists.add(posting);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        
+        int[] ids = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        int count = ids.length;
+        for (int l = 1; l < lists.size() && count > 0; l++) {
+            count = intersect(ids, count, lists.get(l));
+        }
+        
+        lookups++;
+        lookupNanos += System.nanoTime() - start;
+        return new Candidates(ids, count, nextSeq);
+    }
+    
+    /**
+     * Keeps the ids (sorted, in place) that are also in the posting list
+     * @return how many are left
+     */
+    private static int intersect(int[] ids, int count, Posting posting) {
+        int kept = 0;
+        int p = 0;
+        for (int i = 0; i < count && p < posting.size; i++) {
+            int id = ids[i];
+            while (p < posting.size && posting.ids[p] < id) {
+                p++;
+            }
+            if (p < posting.size && posting.ids[p] == id) {
+                ids[kept++] = id;
+            }
+        }
+        return kept;
+    }
+    
+    private static long gram(String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+    
+    /**
+     * Approximate heap used by the index
+     */
+    public synchronized long getMemoryBytes() {
+        return postings.size() * (MAP_ENTRY_BYTES + POSTING_BYTES) + postingCapacity * 4;
+    }
+    
+    public synchronized String getStatsSummary() {
+        return String.format("%d entries (ids up to %d), %d trigrams, %d postings, ~%d KB, %d lookups (avg %.3fms)",
+            documents, nextId, postings.size(), postingCount, getMemoryBytes() / 1024, lookups,
+            lookups == 0 ? 0 : lookupNanos / 1e6 / lookups);
+    }
+    
+    /**
+     * Result of a lookup: sorted candidate ids, plus the next sequence number at
+     * lookup time (entries indexed later weren't considered, even if they took
+     * over the id of an entry that was)
+     */
+    public static final class Candidates {
+        private final int[] ids;
+        private final int count;
+        private final long indexedBefore;
+        
+        Candidates(int[] ids, int count, long indexedBefore) {
+            this.ids = ids;
+            this.count = count;
+            this.indexedBefore = indexedBefore;
+        }
+        
+        /**
+         * False only if the entry's search key was indexed and can't contain the query
+         */
+        public boolean mayContain(ClipboardMonitor.ClipboardEntry entry) {
+            int id = entry.getIndexId();
+            return id < 0 || entry.getIndexSeq() >= indexedBefore || entry.getSearchKey() == null ||
+                   Arrays.binarySearch(ids, 0, count, id) >= 0;
+        }
+        
+        /**
+         * These candidates ANDed with a type selection's bitset. Entries the
+         * lookup or the selection didn't cover are still candidates; check
+         * those against the selection itself.
+         */
+        public Candidates retainAll(ContentTypeIndex.Selection selection) {
+            BitSet types = selection.getBits();
+            int[] kept = new int[count];
+            int keptCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (types.get(ids[i])) {
+                    kept[keptCount++] = ids[i];
+                }
+            }
+            return new Candidates(kept, keptCount, Math.min(indexedBefore, selection.getIndexedBefore()));
+        }
+        
+        public int size() {
+            return count;
+        }
+    }
+    
+    /**
+     * Sorted ids of the entries containing one trigram
+     */
+    private static final class Posting {
+        static final Posting EMPTY = new Posting();
+        
+        int[] ids = new int[INITIAL_POSTING_CAPACITY];
+        int size = 0;
+        
+        /**
+         * Adds the id in order; new ids go last, reused ones are shifted in
+         * @return false if the id is already there (the trigram repeats in the entry)
+         */
+        boolean insert(int id) {
+            int index = size > 0 && ids[size - 1] >= id ? Arrays.binarySearch(ids, 0, size, id) : -size - 1;
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+            return true;
+        }
+        
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+    }
+}